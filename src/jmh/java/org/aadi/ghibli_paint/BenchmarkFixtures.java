@@ -0,0 +1,71 @@
+package org.aadi.ghibli_paint;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+/**
+ * Wiring for benchmarks that exercise Spring beans without a context: {@code @Value} fields are
+ * set reflectively and the bean's own init method is called afterwards.
+ */
+public final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    public static <T> T set(T target, String field, Object value) {
+        Class<?> type = target.getClass();
+        while (type != null) {
+            try {
+                Field declared = type.getDeclaredField(field);
+                declared.setAccessible(true);
+                declared.set(target, value);
+                return target;
+            } catch (NoSuchFieldException e) {
+                type = type.getSuperclass();
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalArgumentException("No field " + field + " on " + target.getClass());
+    }
+
+    /**
+     * Incompressible bytes of the given size, standing in for an encoded image body.
+     */
+    public static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Local HTTP endpoint that answers every POST at {@code path} with {@code body} as image/png,
+     * draining the request first so keep-alive connections stay reusable.
+     */
+    public static HttpServer imageStub(String path, byte[] body) throws IOException {
+        // Without TCP_NODELAY the JDK server's header/body writes hit the ~40 ms delayed-ACK stall
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        server.createContext(path, exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(16, runnable -> {
+            Thread thread = new Thread(runnable, "image-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        return server;
+    }
+}
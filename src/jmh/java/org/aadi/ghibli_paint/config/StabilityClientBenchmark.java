@@ -0,0 +1,131 @@
+package org.aadi.ghibli_paint.config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.netty.channel.ChannelOption;
+import org.aadi.ghibli_paint.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One multipart generate call against a local stub returning a 180 KB PNG-sized body, through
+ * the shared pooled client from {@link StabilityClientConfig}, through a WebClient built per call
+ * (the original code, default connector), and over a fresh connection per call (no pooling at all).
+ * The first two also differ in TCP_NODELAY, which dominates for small multipart requests.
+ * Loopback without TLS understates what a fresh connection costs against the real API, and the
+ * JDK stub serialises concurrent exchanges, so this runs single-threaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class StabilityClientBenchmark {
+
+    private static final int BODY_SIZE = 180 * 1024;
+
+    private HttpServer stub;
+    private String baseUrl;
+    private ConnectionProvider connectionProvider;
+    private WebClient pooled;
+    private WebClient unpooled;
+    private MultiValueMap<String, HttpEntity<?>> parts;
+
+    @Setup
+    public void setUp() throws IOException {
+        stub = BenchmarkFixtures.imageStub("/v2beta/stable-image/generate/core", BenchmarkFixtures.randomBytes(BODY_SIZE));
+        baseUrl = "http://127.0.0.1:" + stub.getAddress().getPort() + "/v2beta/stable-image";
+
+        StabilityClientConfig config = new StabilityClientConfig();
+        BenchmarkFixtures.set(config, "apiUrl", baseUrl);
+        BenchmarkFixtures.set(config, "apiKey", "benchmark");
+        BenchmarkFixtures.set(config, "maxConnections", 50);
+        BenchmarkFixtures.set(config, "pendingAcquireMax", 1000);
+        BenchmarkFixtures.set(config, "pendingAcquireTimeoutMs", 10_000L);
+        BenchmarkFixtures.set(config, "maxIdleTimeSeconds", 30L);
+        BenchmarkFixtures.set(config, "maxLifeTimeSeconds", 300L);
+        BenchmarkFixtures.set(config, "connectTimeoutMs", 5_000);
+        BenchmarkFixtures.set(config, "readTimeoutSeconds", 60);
+        BenchmarkFixtures.set(config, "responseTimeoutSeconds", 60L);
+        connectionProvider = config.stabilityConnectionProvider();
+        pooled = config.stabilityWebClient(WebClient.builder(), connectionProvider);
+
+        unpooled = WebClient.builder()
+                .baseUrl(baseUrl)
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer benchmark")
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.newConnection()
+                        .option(ChannelOption.TCP_NODELAY, true)))
+                .build();
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("prompt", "Studio Ghibli style, anime, a quiet seaside town at dusk");
+        builder.part("aspect_ratio", "1:1");
+        builder.part("output_format", "png");
+        builder.part("seed", "42");
+        parts = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        connectionProvider.dispose();
+        stub.stop(0);
+    }
+
+    private static int call(WebClient client, MultiValueMap<String, HttpEntity<?>> parts) {
+        DataBuffer body = client.post()
+                .uri("/generate/core")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(parts))
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .as(DataBufferUtils::join)
+                .block();
+        int size = body.readableByteCount();
+        DataBufferUtils.release(body);
+        return size;
+    }
+
+    @Benchmark
+    public int pooledClient() {
+        return call(pooled, parts);
+    }
+
+    @Benchmark
+    public int clientPerRequest() {
+        WebClient client = WebClient.builder()
+                .baseUrl(baseUrl)
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer benchmark")
+                .defaultHeader(HttpHeaders.ACCEPT, "image/*")
+                .build();
+        return call(client, parts);
+    }
+
+    @Benchmark
+    public int connectionPerRequest() {
+        return call(unpooled, parts);
+    }
+}
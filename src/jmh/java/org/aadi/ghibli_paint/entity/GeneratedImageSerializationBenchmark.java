@@ -0,0 +1,69 @@
+package org.aadi.ghibli_paint.entity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of gallery-sized {@link GeneratedImage} lists, with the mapper set up the
+ * way Spring Boot builds it for this application (JSR-310 module, no empty-bean failures).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratedImageSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int images;
+
+    private ObjectMapper objectMapper;
+    private List<GeneratedImage> page;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+                .build();
+        LocalDateTime now = LocalDateTime.now();
+        page = new ArrayList<>(images);
+        for (int i = 0; i < images; i++) {
+            GeneratedImage image = new GeneratedImage();
+            image.setId((long) i);
+            image.setPrompt("Studio Ghibli style, anime, a quiet seaside town at dusk #" + i);
+            image.setImageUrl("http://localhost:8080/api/images/serve/3a20404f-64e9-451c-b3a9-7a786df7f5be.png");
+            image.setImageType("text-to-image");
+            image.setOriginalFilename("3a20404f-64e9-451c-b3a9-7a786df7f5be.png");
+            image.setStorageKey("3a20404f-64e9-451c-b3a9-7a786df7f5be.png");
+            image.setContentHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+            image.setFileSize(180_318L);
+            image.setCreatedAt(now.minusMinutes(i));
+            image.setWidth(1024);
+            image.setHeight(1024);
+            page.add(image);
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
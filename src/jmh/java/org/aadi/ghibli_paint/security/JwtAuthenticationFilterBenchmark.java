@@ -0,0 +1,89 @@
+package org.aadi.ghibli_paint.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aadi.ghibli_paint.BenchmarkFixtures;
+import org.aadi.ghibli_paint.repository.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of {@link JwtAuthenticationFilter} with a warm principal cache, as on the
+ * steady-state request path. {@code anonymous} is the floor (mock request plus chain); the
+ * repository is a stub that would fail the run if the cache were bypassed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+    private JwtAuthenticationFilter filter;
+    private String bearer;
+
+    @Setup
+    public void setUp() {
+        JwtUtil jwtUtil = JwtUtilBenchmark.newJwtUtil(10_000);
+        AuthenticatedUser user = new AuthenticatedUser(42L, "alice", null, true);
+        bearer = "Bearer " + jwtUtil.generateToken(user);
+
+        UserDetailsCache cache = BenchmarkFixtures.set(new UserDetailsCache(), "maxEntries", 10_000);
+        BenchmarkFixtures.set(cache, "ttlSeconds", 3_600L);
+        cache.init();
+        cache.put(user);
+
+        UserRepository repository = (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    throw new IllegalStateException("Principal cache miss: " + method.getName());
+                });
+        filter = new JwtAuthenticationFilter(jwtUtil, new CustomUserDetailsService(repository, cache),
+                new SimpleMeterRegistry());
+        filter.init();
+    }
+
+    private Object run(String authorization) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/images/gallery");
+        if (authorization != null) {
+            request.addHeader("Authorization", authorization);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            filter.doFilter(request, response, new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Benchmark
+    public Object anonymous() throws Exception {
+        return run(null);
+    }
+
+    @Benchmark
+    public Object authenticated() throws Exception {
+        return run(bearer);
+    }
+
+    @Benchmark
+    public Object malformedToken() throws Exception {
+        return run("Bearer not.a.jwt");
+    }
+}
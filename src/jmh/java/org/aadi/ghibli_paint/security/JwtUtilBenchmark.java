@@ -0,0 +1,81 @@
+package org.aadi.ghibli_paint.security;
+
+import io.jsonwebtoken.Claims;
+import org.aadi.ghibli_paint.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issue, parse and validate. {@code parseCached} is a repeat presentation answered from the
+ * verified-token cache; {@code parseUncached} alternates two tokens through a one-entry cache so
+ * every call pays the full HMAC verification and JSON decode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    static final String SECRET = "0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    private final AuthenticatedUser user = new AuthenticatedUser(42L, "alice", null, true);
+
+    private JwtUtil cached;
+    private JwtUtil uncached;
+    private String token;
+    private String otherToken;
+    private Claims claims;
+    private boolean flip;
+
+    @Setup
+    public void setUp() {
+        cached = newJwtUtil(10_000);
+        uncached = newJwtUtil(1);
+        token = cached.generateToken(user);
+        otherToken = cached.generateToken(new AuthenticatedUser(43L, "bob", null, true));
+        claims = cached.parseToken(token);
+    }
+
+    static JwtUtil newJwtUtil(int cacheEntries) {
+        JwtUtil jwtUtil = new JwtUtil();
+        BenchmarkFixtures.set(jwtUtil, "secret", SECRET);
+        BenchmarkFixtures.set(jwtUtil, "expiration", 3_600_000L);
+        BenchmarkFixtures.set(jwtUtil, "cacheMaxEntries", cacheEntries);
+        BenchmarkFixtures.set(jwtUtil, "cacheTtlSeconds", 300L);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    @Benchmark
+    public String generate() {
+        return cached.generateToken(user);
+    }
+
+    @Benchmark
+    public Claims parseCached() {
+        return cached.parseToken(token);
+    }
+
+    @Benchmark
+    public Claims parseUncached() {
+        flip = !flip;
+        return uncached.parseToken(flip ? token : otherToken);
+    }
+
+    @Benchmark
+    public Boolean validate() {
+        return cached.validateToken(claims, user);
+    }
+}
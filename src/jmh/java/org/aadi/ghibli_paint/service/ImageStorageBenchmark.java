@@ -0,0 +1,77 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aadi.ghibli_paint.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing an encoded image to the store: the original {@code saveImage} (a plain
+ * {@code Files.write} to the final name) against the temp-file-and-rename into a shard directory
+ * that {@link LocalImageStore} does now.
+ * Each written file is deleted in the same invocation, so both sides pay for one unlink.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageStorageBenchmark {
+
+    @Param({"65536", "1048576"})
+    private int size;
+
+    private byte[] content;
+    private Path directory;
+    private ImageStorageService storage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        content = BenchmarkFixtures.randomBytes(size);
+        directory = Files.createTempDirectory("jmh-storage");
+        LocalImageStore store = BenchmarkFixtures.set(new LocalImageStore(), "storagePath", directory.toString());
+        storage = BenchmarkFixtures.set(new ImageStorageService(new SimpleMeterRegistry(), store),
+                "storagePath", directory.toString());
+        storage.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Path directWrite() throws IOException {
+        Path file = directory.resolve(UUID.randomUUID() + ".png");
+        Files.write(file, content);
+        Files.delete(file);
+        return file;
+    }
+
+    @Benchmark
+    public String writeAtomically() throws IOException {
+        String filename = UUID.randomUUID() + ".png";
+        storage.writeAtomically(filename, content);
+        storage.delete(filename);
+        return filename;
+    }
+}
@@ -0,0 +1,171 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aadi.ghibli_paint.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes/s and random reads/s for one file per image ({@link LocalImageStore}) against appends
+ * to packed volumes ({@link PackedVolumeImageStore}). Reads pick uniformly from a preloaded set
+ * and mostly hit the page cache, so the difference is per-file syscall and metadata overhead
+ * (open, close, directory lookups, inode creation) rather than device throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackedVolumeStoreBenchmark {
+
+    private static final int PRELOADED = 5000;
+
+    @State(Scope.Benchmark)
+    public static class Blob {
+
+        @Param({"16384", "131072"})
+        private int size;
+
+        private byte[] content;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            content = BenchmarkFixtures.randomBytes(size);
+        }
+    }
+
+    /**
+     * Fresh stores per iteration, so written blobs do not pile up across the whole trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Writes {
+
+        private Path directory;
+        private LocalImageStore files;
+        private PackedVolumeImageStore packed;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("jmh-packed-writes");
+            files = newFileStore(directory.resolve("files"));
+            packed = newPackedStore(directory.resolve("volumes"));
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            packed.stop();
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Reads {
+
+        private Path directory;
+        private LocalImageStore files;
+        private PackedVolumeImageStore packed;
+        private String[] keys;
+
+        @Setup(Level.Trial)
+        public void setUp(Blob blob) throws IOException {
+            directory = Files.createTempDirectory("jmh-packed-reads");
+            files = newFileStore(directory.resolve("files"));
+            packed = newPackedStore(directory.resolve("volumes"));
+            keys = new String[PRELOADED];
+            for (int i = 0; i < PRELOADED; i++) {
+                keys[i] = UUID.randomUUID() + ".png";
+                files.put(keys[i], new ByteArrayInputStream(blob.content), blob.content.length);
+                packed.put(keys[i], new ByteArrayInputStream(blob.content), blob.content.length);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            packed.stop();
+            FileSystemUtils.deleteRecursively(directory);
+        }
+
+        String randomKey() {
+            return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ReadBuffer {
+        private final byte[] bytes = new byte[64 * 1024];
+    }
+
+    @Benchmark
+    public String writeFile(Blob blob, Writes writes) throws IOException {
+        String key = UUID.randomUUID() + ".png";
+        writes.files.put(key, new ByteArrayInputStream(blob.content), blob.content.length);
+        return key;
+    }
+
+    @Benchmark
+    public String writePacked(Blob blob, Writes writes) throws IOException {
+        String key = UUID.randomUUID() + ".png";
+        writes.packed.put(key, new ByteArrayInputStream(blob.content), blob.content.length);
+        return key;
+    }
+
+    @Benchmark
+    public long readFile(Reads reads, ReadBuffer buffer) throws IOException {
+        return drain(reads.files, reads.randomKey(), buffer.bytes);
+    }
+
+    @Benchmark
+    public long readPacked(Reads reads, ReadBuffer buffer) throws IOException {
+        return drain(reads.packed, reads.randomKey(), buffer.bytes);
+    }
+
+    /**
+     * What serving does per request: stat for the length, then stream the body out.
+     */
+    private static long drain(ImageStore store, String key, byte[] buffer) throws IOException {
+        long length = store.stat(key).orElseThrow().size();
+        long total = 0;
+        try (InputStream in = store.get(key, 0, length)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    private static LocalImageStore newFileStore(Path directory) {
+        return BenchmarkFixtures.set(new LocalImageStore(), "storagePath", directory.toString());
+    }
+
+    private static PackedVolumeImageStore newPackedStore(Path directory) throws IOException {
+        PackedVolumeImageStore store = new PackedVolumeImageStore(new SimpleMeterRegistry());
+        BenchmarkFixtures.set(store, "volumePath", directory.toString());
+        BenchmarkFixtures.set(store, "volumeSizeMb", 256L);
+        BenchmarkFixtures.set(store, "compactionThreshold", 0.3);
+        BenchmarkFixtures.set(store, "compactionBytesPerSecond", 32L * 1024 * 1024);
+        store.start();
+        return store;
+    }
+}
@@ -0,0 +1,82 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aadi.ghibli_paint.BenchmarkFixtures;
+import org.aadi.ghibli_paint.util.TokenBucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate-limit decisions under contention. The {@code same*} cases have every thread hitting one
+ * user's bucket, so the CAS retries; the {@code distinct*} cases give each thread its own user,
+ * which is the common shape in production. Buckets are sized so requests are always admitted and
+ * every call takes the CAS path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final long BURST = Long.MAX_VALUE / 4;
+    private static final long INTERVAL_NANOS = 1;
+
+    private TokenBucket sharedBucket;
+    private RateLimiterService rateLimiterService;
+
+    @State(Scope.Thread)
+    public static class PerThread {
+
+        private static final AtomicLong NEXT_USER = new AtomicLong(1_000);
+
+        final Long userId = NEXT_USER.incrementAndGet();
+        final TokenBucket bucket = new TokenBucket(BURST, INTERVAL_NANOS, System.nanoTime());
+    }
+
+    @Setup
+    public void setUp() {
+        sharedBucket = new TokenBucket(BURST, INTERVAL_NANOS, System.nanoTime());
+        rateLimiterService = new RateLimiterService(new SimpleMeterRegistry());
+        BenchmarkFixtures.set(rateLimiterService, "enabled", true);
+        BenchmarkFixtures.set(rateLimiterService, "generateBurst", BURST);
+        BenchmarkFixtures.set(rateLimiterService, "generateRefillPerMinute", TimeUnit.MINUTES.toNanos(1));
+        BenchmarkFixtures.set(rateLimiterService, "maxBuckets", 100_000);
+        BenchmarkFixtures.set(rateLimiterService, "idleEvictionSeconds", 600L);
+        rateLimiterService.init();
+    }
+
+    @Benchmark
+    public TokenBucket.Decision sameBucket() {
+        return sharedBucket.tryAcquire(System.nanoTime());
+    }
+
+    @Benchmark
+    public TokenBucket.Decision distinctBuckets(PerThread thread) {
+        return thread.bucket.tryAcquire(System.nanoTime());
+    }
+
+    @Benchmark
+    public TokenBucket.Decision sameUser() {
+        return rateLimiterService.tryAcquire(1L, RateLimiterService.Policy.GENERATE);
+    }
+
+    @Benchmark
+    public TokenBucket.Decision distinctUsers(PerThread thread) {
+        return rateLimiterService.tryAcquire(thread.userId, RateLimiterService.Policy.GENERATE);
+    }
+}
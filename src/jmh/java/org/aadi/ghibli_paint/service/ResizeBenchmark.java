@@ -0,0 +1,65 @@
+package org.aadi.ghibli_paint.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the progressive bilinear downscale used for gallery variants, from a 1024x1024
+ * source (the size Stability AI returns) to each configured variant width. {@code resizeConcurrent}
+ * runs the same work from twice as many threads as the default derivative pool, to show contention
+ * and what resizes in flight together cost. Run it with {@code -Djmh.args="-prof gc"}: then
+ * {@code gc.alloc.rate.norm} is the heap one resize allocates, which is what each in-flight
+ * resize holds on top of its decoded source.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResizeBenchmark {
+
+    @Param({"128", "256", "512"})
+    private int targetWidth;
+
+    @Param({"true", "false"})
+    private boolean alpha;
+
+    private BufferedImage source;
+
+    @Setup
+    public void setUp() {
+        source = new BufferedImage(1024, 1024, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = source.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, 1024, 1024, Color.BLUE));
+        graphics.fillRect(0, 0, 1024, 1024);
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage resize() {
+        return ImageDerivativeService.resize(source, targetWidth);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BufferedImage resizeConcurrent() {
+        return ImageDerivativeService.resize(source, targetWidth);
+    }
+}
@@ -0,0 +1,114 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aadi.ghibli_paint.BenchmarkFixtures;
+import org.aadi.ghibli_paint.dto.StoredImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consuming an upstream image body delivered as 8 KB buffers: the original {@code reduce} that
+ * re-copies the accumulated array per chunk (quadratic in body size), a single {@code join}, and
+ * the current streaming write through {@link ImageStorageService#store}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpstreamAggregationBenchmark {
+
+    private static final int CHUNK = 8192;
+
+    @Param({"262144", "1048576", "4194304"})
+    private int bodySize;
+
+    private byte[] body;
+    private Path directory;
+    private ImageStorageService storage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        body = BenchmarkFixtures.randomBytes(bodySize);
+        directory = Files.createTempDirectory("jmh-aggregation");
+        LocalImageStore store = BenchmarkFixtures.set(new LocalImageStore(), "storagePath", directory.toString());
+        storage = BenchmarkFixtures.set(new ImageStorageService(new SimpleMeterRegistry(), store),
+                "storagePath", directory.toString());
+        storage.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    private Flux<DataBuffer> upstream() {
+        return Flux.range(0, (bodySize + CHUNK - 1) / CHUNK)
+                .map(i -> {
+                    int offset = i * CHUNK;
+                    return DefaultDataBufferFactory.sharedInstance.wrap(
+                            ByteBuffer.wrap(body, offset, Math.min(CHUNK, bodySize - offset)).slice());
+                });
+    }
+
+    @Benchmark
+    public byte[] reduceConcatenation() {
+        return upstream()
+                .map(dataBuffer -> {
+                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
+                    dataBuffer.read(bytes);
+                    DataBufferUtils.release(dataBuffer);
+                    return bytes;
+                })
+                .reduce((bytes1, bytes2) -> {
+                    byte[] combined = new byte[bytes1.length + bytes2.length];
+                    System.arraycopy(bytes1, 0, combined, 0, bytes1.length);
+                    System.arraycopy(bytes2, 0, combined, bytes1.length, bytes2.length);
+                    return combined;
+                })
+                .block();
+    }
+
+    @Benchmark
+    public byte[] join() {
+        DataBuffer joined = DataBufferUtils.join(upstream()).block();
+        byte[] bytes = new byte[joined.readableByteCount()];
+        joined.read(bytes);
+        DataBufferUtils.release(joined);
+        return bytes;
+    }
+
+    /**
+     * Includes the temp-file create, SHA-256 and rename, plus deleting the result so the trial
+     * does not fill the disk; compare against {@link ImageStorageBenchmark} for the raw write cost.
+     */
+    @Benchmark
+    public StoredImage streamToStorage() throws IOException {
+        StoredImage stored = storage.store(upstream(), "png").block();
+        storage.delete(stored.getFilename());
+        return stored;
+    }
+}
@@ -0,0 +1,88 @@
+package org.aadi.ghibli_paint.util;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup cost, memory footprint and observed false-positive rate of the availability filter at
+ * its configured 1% target. Footprint and false positives are reported as secondary results
+ * ({@code footprintBytes}, {@code falsePositives} / {@code absentProbes}), so the JSON output
+ * tracks them alongside the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BloomFilterBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int insertions;
+
+    private BloomFilter filter;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long absentProbes;
+        public long falsePositives;
+        public long footprintBytes;  // a level, not a count: rewritten on every call
+
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            absentProbes = 0;
+            falsePositives = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filter = new BloomFilter(insertions, 0.01);
+        for (int i = 0; i < insertions; i++) {
+            filter.add("user-" + i);
+        }
+        System.out.printf("bloom insertions=%d bytes=%d expected_fpp=%.5f%n",
+                insertions, filter.sizeInBytes(), filter.expectedFalsePositiveRate());
+    }
+
+    @Benchmark
+    public boolean presentKey(Counters counters) {
+        counters.next = (counters.next + 1) % insertions;
+        counters.footprintBytes = filter.sizeInBytes();
+        return filter.mightContain("user-" + counters.next);
+    }
+
+    @Benchmark
+    public boolean absentKey(Counters counters) {
+        boolean hit = filter.mightContain("free-" + counters.next++);
+        counters.footprintBytes = filter.sizeInBytes();
+        counters.absentProbes++;
+        if (hit) {
+            counters.falsePositives++;
+        }
+        return hit;
+    }
+
+    @Benchmark
+    public void add(Counters counters) {
+        filter.add("new-" + counters.next++);
+        counters.footprintBytes = filter.sizeInBytes();
+    }
+}
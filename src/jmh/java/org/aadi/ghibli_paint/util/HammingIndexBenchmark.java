@@ -0,0 +1,115 @@
+package org.aadi.ghibli_paint.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Near-duplicate query latency over {@code size} perceptual hashes: {@link HammingIndex} against
+ * a linear scan of a {@code long[]}. {@code uniform} hashes have no near neighbours at all;
+ * {@code clustered} is closer to a real gallery, groups of eight regenerations within 6 bits of
+ * unrelated centres. Queries are stored hashes with two bits flipped. The index is freshly loaded;
+ * one with a full unindexed tail also scans up to a thirty-second of its entries per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class HammingIndexBenchmark {
+
+    private static final int QUERIES = 4096;
+
+    @Param({"1000000"})
+    private int size;
+
+    @Param({"4", "8", "12", "16"})
+    private int radius;
+
+    @Param({"clustered", "uniform"})
+    private String distribution;
+
+    private HammingIndex index;
+    private long[] hashes;
+    private long[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        hashes = new long[size];
+        long centre = random.nextLong();
+        for (int i = 0; i < size; i++) {
+            if ("uniform".equals(distribution)) {
+                hashes[i] = random.nextLong();
+                continue;
+            }
+            if (i % 8 == 0) {
+                centre = random.nextLong();
+            }
+            hashes[i] = flip(centre, random.nextInt(7), random);
+        }
+        index = new HammingIndex(size);
+        index.addAll(hashes, LongStream.range(0, size).toArray());
+        queries = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = flip(hashes[random.nextInt(size)], 2, random);
+        }
+        // The two sides must agree, or the comparison means nothing
+        for (int i = 0; i < 64; i++) {
+            int expected = scan(queries[i]);
+            int actual = index.within(queries[i], radius).size();
+            if (expected != actual) {
+                throw new IllegalStateException("Index found " + actual + " matches, scan " + expected);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<HammingIndex.Match> multiIndex() {
+        return index.within(nextQuery(), radius);
+    }
+
+    @Benchmark
+    public int linearScan() {
+        return scan(nextQuery());
+    }
+
+    private int scan(long query) {
+        int matches = 0;
+        for (long hash : hashes) {
+            if (Long.bitCount(hash ^ query) <= radius) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private long nextQuery() {
+        next = (next + 1) % QUERIES;
+        return queries[next];
+    }
+
+    private static long flip(long hash, int bits, SplittableRandom random) {
+        long flipped = hash;
+        while (Long.bitCount(flipped ^ hash) < bits) {
+            flipped ^= 1L << random.nextInt(64);
+        }
+        return flipped;
+    }
+}
@@ -0,0 +1,140 @@
+package org.aadi.ghibli_paint.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.aadi.ghibli_paint.service.BlobDeletionWorker;
+import org.aadi.ghibli_paint.service.ImageStorageService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The account-delete scenario: seeds one account with {@code --images} gallery rows and blobs,
+ * deletes it through {@code DELETE /api/users/{id}} and reports the request's wall time and the
+ * JDBC statements it prepared, then how long one blob deletion pass takes to remove the files.
+ * Rows are seeded with plain JDBC batches, which is not what is being measured.
+ */
+class AccountDeletionRun {
+
+    private static final int SEED_BATCH = 1000;
+
+    private final LoadTestOptions options;
+    private final ConfigurableApplicationContext context;
+    private final HttpClient client;
+    private final String baseUrl;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    AccountDeletionRun(LoadTestOptions options, ConfigurableApplicationContext context, HttpClient client,
+                       String baseUrl) {
+        this.options = options;
+        this.context = context;
+        this.client = client;
+        this.baseUrl = baseUrl;
+    }
+
+    Map<String, Object> run(TrafficDriver.Account account) throws Exception {
+        JsonNode login = objectMapper.readTree(send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(
+                        Map.of("username", account.username(), "password", account.password()))))
+                .build()).body());
+        long userId = login.path("userId").asLong();
+        String token = login.path("token").asText();
+
+        int images = options.getInt("images");
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        long seedStart = System.nanoTime();
+        seed(jdbc, userId, images);
+        double seedSeconds = (System.nanoTime() - seedStart) / 1e9;
+        LoadTest.log("Seeded %d images in %.1fs", images, seedSeconds);
+
+        Statistics statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        long start = System.nanoTime();
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/users/" + userId))
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(options.getInt("request-timeout")))
+                .DELETE()
+                .build());
+        double requestSeconds = (System.nanoTime() - start) / 1e9;
+        long requestStatements = statistics.getPrepareStatementCount();
+        long remainingRows = count(jdbc, "select count(*) from generated_images where user_id = ?", userId);
+        LoadTest.log("DELETE /api/users/%d -> %d in %.2fs, %d statements", userId, response.statusCode(),
+                requestSeconds, requestStatements);
+
+        // The scheduled worker is parked for this scenario; one direct pass drains the whole log
+        statistics.clear();
+        long pendingBefore = count(jdbc, "select count(*) from blob_deletions");
+        long drainStart = System.nanoTime();
+        context.getBean(BlobDeletionWorker.class).drain();
+        double drainSeconds = (System.nanoTime() - drainStart) / 1e9;
+        long pending = count(jdbc, "select count(*) from blob_deletions");
+        LoadTest.log("Drained %d blob log entries in %.1fs, %d statements, %d left", pendingBefore - pending,
+                drainSeconds, statistics.getPrepareStatementCount(), pending);
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("status", response.statusCode());
+        request.put("seconds", requestSeconds);
+        request.put("statements", requestStatements);
+        request.put("remainingImageRows", remainingRows);
+        Map<String, Object> drain = new LinkedHashMap<>();
+        drain.put("entries", pendingBefore);
+        drain.put("seconds", drainSeconds);
+        drain.put("statements", statistics.getPrepareStatementCount());
+        drain.put("pendingEntries", pending);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options.asMap());
+        report.put("applicationOverrides", options.applicationArgs());
+        report.put("images", images);
+        report.put("seedSeconds", seedSeconds);
+        report.put("deleteRequest", request);
+        report.put("blobDrain", drain);
+        System.out.printf("%naccount-delete request %s%nblob drain %s%n", request, drain);
+        return report;
+    }
+
+    private void seed(JdbcTemplate jdbc, long userId, int images) throws Exception {
+        ImageStorageService storage = context.getBean(ImageStorageService.class);
+        byte[] content = new byte[options.getInt("image-bytes")];
+        ThreadLocalRandom.current().nextBytes(content);
+        // Far above anything the pooled sequence has handed out
+        long firstId = 1_000_000_000L;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < images; i++) {
+            String key = "seed-" + userId + "-" + i + ".png";
+            storage.writeAtomically(key, content);
+            rows.add(new Object[]{firstId + i, userId, "seeded " + i, baseUrl + "/api/images/serve/" + key,
+                    "text-to-image", key, (long) content.length, now});
+            if (rows.size() == SEED_BATCH || i == images - 1) {
+                jdbc.batchUpdate("insert into generated_images (id, user_id, prompt, image_url, image_type, "
+                        + "storage_key, file_size, created_at) values (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static long count(JdbcTemplate jdbc, String sql, Object... args) {
+        Long count = jdbc.queryForObject(sql, Long.class, args);
+        return count == null ? 0 : count;
+    }
+}
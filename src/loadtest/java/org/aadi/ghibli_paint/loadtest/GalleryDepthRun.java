@@ -0,0 +1,167 @@
+package org.aadi.ghibli_paint.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The gallery-depth scenario: seeds one account with {@code --images} gallery rows, walks the
+ * whole gallery through {@code GET /api/images/gallery} by cursor, then times the first page
+ * against pages at increasing depth, each sampled repeatedly. With keyset pagination the deep
+ * pages should cost what the first one does. Rows are seeded with plain JDBC batches and without
+ * blobs, since listing a gallery never reads them.
+ */
+class GalleryDepthRun {
+
+    private static final int SEED_BATCH = 5000;
+    private static final int PAGE_SIZE = 100;
+    private static final int SAMPLES = 200;
+    private static final double[] DEPTHS = {0.1, 0.5, 0.9, 0.999};
+
+    private final LoadTestOptions options;
+    private final ConfigurableApplicationContext context;
+    private final HttpClient client;
+    private final String baseUrl;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    GalleryDepthRun(LoadTestOptions options, ConfigurableApplicationContext context, HttpClient client,
+                    String baseUrl) {
+        this.options = options;
+        this.context = context;
+        this.client = client;
+        this.baseUrl = baseUrl;
+    }
+
+    Map<String, Object> run(TrafficDriver.Account account) throws Exception {
+        JsonNode login = objectMapper.readTree(send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(
+                        Map.of("username", account.username(), "password", account.password()))))
+                .build()).body());
+        long userId = login.path("userId").asLong();
+        String token = login.path("token").asText();
+
+        int images = options.getInt("images");
+        long seedStart = System.nanoTime();
+        seed(context.getBean(JdbcTemplate.class), userId, images);
+        double seedSeconds = (System.nanoTime() - seedStart) / 1e9;
+        LoadTest.log("Seeded %d images in %.1fs", images, seedSeconds);
+
+        // One full walk, which must return every row, also finds the cursors to sample
+        int pages = (images + PAGE_SIZE - 1) / PAGE_SIZE;
+        Map<Double, Integer> pageAtDepth = new LinkedHashMap<>();
+        for (double depth : DEPTHS) {
+            pageAtDepth.put(depth, Math.min(pages - 1, (int) (pages * depth)));
+        }
+        Map<Integer, String> cursorsByPage = new HashMap<>();
+        long walkStart = System.nanoTime();
+        long walked = 0;
+        String cursor = null;
+        for (int page = 0; page < pages; page++) {
+            if (pageAtDepth.containsValue(page)) {
+                cursorsByPage.put(page, cursor);
+            }
+            JsonNode body = objectMapper.readTree(gallery(token, cursor).body());
+            walked += body.path("items").size();
+            cursor = body.path("nextCursor").isNull() ? null : body.path("nextCursor").asText();
+        }
+        double walkSeconds = (System.nanoTime() - walkStart) / 1e9;
+        if (walked != images || cursor != null) {
+            throw new IllegalStateException("Walk returned " + walked + " of " + images + " rows");
+        }
+        LoadTest.log("Walked %d pages (%d items) in %.1fs", pages, walked, walkSeconds);
+
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        latencies.put("first", sample(token, null));
+        for (Map.Entry<Double, Integer> entry : pageAtDepth.entrySet()) {
+            Map<String, Object> deep = sample(token, cursorsByPage.get(entry.getValue()));
+            deep.put("page", entry.getValue());
+            latencies.put("depth" + entry.getKey(), deep);
+        }
+        latencies.forEach((depth, summary) -> System.out.printf("gallery page %-10s %s%n", depth, summary));
+
+        Map<String, Object> walk = new LinkedHashMap<>();
+        walk.put("pages", pages);
+        walk.put("items", walked);
+        walk.put("seconds", walkSeconds);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options.asMap());
+        report.put("applicationOverrides", options.applicationArgs());
+        report.put("images", images);
+        report.put("pageSize", PAGE_SIZE);
+        report.put("seedSeconds", seedSeconds);
+        report.put("walk", walk);
+        report.put("pageLatency", latencies);
+        return report;
+    }
+
+    private Map<String, Object> sample(String token, String cursor) throws Exception {
+        Histogram histogram = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = gallery(token, cursor);
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Gallery page answered " + response.statusCode());
+            }
+            histogram.recordValue(Math.min(histogram.getHighestTrackableValue(), micros));
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("samples", SAMPLES);
+        summary.put("p50Ms", histogram.getValueAtPercentile(50) / 1000.0);
+        summary.put("p99Ms", histogram.getValueAtPercentile(99) / 1000.0);
+        summary.put("maxMs", histogram.getMaxValue() / 1000.0);
+        return summary;
+    }
+
+    private HttpResponse<String> gallery(String token, String cursor) throws Exception {
+        String query = "?limit=" + PAGE_SIZE + (cursor == null ? "" : "&after=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8));
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/images/gallery" + query))
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(options.getInt("request-timeout")))
+                .GET()
+                .build());
+    }
+
+    /**
+     * Three rows per timestamp, so the walk also crosses ties on created_at.
+     */
+    private void seed(JdbcTemplate jdbc, long userId, int images) {
+        // Far above anything the pooled sequence has handed out
+        long firstId = 1_000_000_000L;
+        LocalDateTime newest = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < images; i++) {
+            String key = "seed-" + userId + "-" + i + ".png";
+            rows.add(new Object[]{firstId + i, userId, "seeded " + i, baseUrl + "/api/images/serve/" + key,
+                    "text-to-image", key, Timestamp.valueOf(newest.minusSeconds(i / 3))});
+            if (rows.size() == SEED_BATCH || i == images - 1) {
+                jdbc.batchUpdate("insert into generated_images (id, user_id, prompt, image_url, image_type, "
+                        + "storage_key, created_at) values (?, ?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
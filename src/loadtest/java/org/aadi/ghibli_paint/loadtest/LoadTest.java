@@ -0,0 +1,258 @@
+package org.aadi.ghibli_paint.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.aadi.ghibli_paint.GhibliPaintBackendApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test. Boots the application in this JVM against in-memory H2 and a local
+ * {@link StabilityStub}, creates the user accounts, then drives the scenario's traffic mix from
+ * one virtual thread per simulated user. Rate limiting is switched off: the point is to find
+ * where the service itself saturates. Runs offline; see the loadtest profile in pom.xml.
+ */
+public class LoadTest {
+
+    private static final String JWT_SECRET = "loadtest-secret-loadtest-secret-loadtest-secret-0123456789";
+
+    private static volatile String phase;
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        Path storage = Files.createTempDirectory("loadtest-images");
+
+        StabilityStub stub = new StabilityStub(options.getDouble("stub-latency-ms"),
+                options.getDouble("stub-latency-p99-ms"), options.getDouble("stub-error-rate"),
+                options.getInt("stub-payload-kb") * 1024);
+        stub.start();
+
+        ConfigurableApplicationContext context = SpringApplication.run(GhibliPaintBackendApplication.class,
+                applicationArgs(options, stub, storage));
+        String baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+
+        ExecutorService users = Executors.newVirtualThreadPerTaskExecutor();
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(users)
+                .build();
+        TrafficDriver driver = new TrafficDriver(options, baseUrl, () -> phase, client);
+
+        int exitCode = 0;
+        try {
+            writeReport(options, switch (options.scenario()) {
+                case ACCOUNT_DELETE -> new AccountDeletionRun(options, context, client, baseUrl).run(driver.createAccount());
+                case GALLERY_DEPTH -> new GalleryDepthRun(options, context, client, baseUrl).run(driver.createAccount());
+                default -> runTraffic(options, driver, users, stub);
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            users.shutdownNow();
+            context.close();
+            stub.stop();
+            FileSystemUtils.deleteRecursively(storage);
+        }
+        System.exit(exitCode);
+    }
+
+    private static Map<String, Object> runTraffic(LoadTestOptions options, TrafficDriver driver, ExecutorService users,
+                                                  StabilityStub stub) throws Exception {
+        log("Creating %d accounts", options.users());
+        List<TrafficDriver.Account> accounts = createAccounts(driver, options.users(), users);
+
+        log("Running %s with %d concurrent users (%ds warm-up, %ds measured)", options.scenario().label(),
+                options.getInt("concurrency"), options.getInt("warmup"), options.getInt("duration"));
+        List<Future<?>> loops = new ArrayList<>();
+        for (int i = 0; i < options.getInt("concurrency"); i++) {
+            TrafficDriver.Account account = accounts.get(i % accounts.size());
+            loops.add(users.submit(() -> {
+                driver.run(account, () -> running);
+                return null;
+            }));
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.getInt("warmup")));
+        ResourceSampler sampler = new ResourceSampler();
+        sampler.start();
+        Map<String, Double> phaseSeconds = measure(options, stub);
+        Map<String, Object> resources = sampler.stop();
+
+        running = false;
+        log("Draining in-flight requests");
+        for (Future<?> loop : loops) {
+            try {
+                loop.get(options.getInt("request-timeout"), TimeUnit.SECONDS);
+            } catch (Exception e) {
+                loop.cancel(true);
+            }
+        }
+        return report(options, driver, phaseSeconds, resources, stub);
+    }
+
+    private static String[] applicationArgs(LoadTestOptions options, StabilityStub stub, Path storage) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:loadtest;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                        + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--jwt.secret=" + JWT_SECRET,
+                "--jwt.expiration=86400000",
+                "--stability.api.key=loadtest",
+                "--stability.api.url=" + stub.baseUrl(),
+                "--stability.model=loadtest",
+                "--app.storage.path=" + storage,
+                "--app.logging.sample-rate=0",
+                "--logging.level.root=WARN",
+                "--rate-limit.enabled=false",
+                "--spring.threads.virtual.enabled=" + options.getBoolean("virtual-threads")));
+        if (options.scenario() == Scenario.ACCOUNT_DELETE) {
+            // Statement counts come from Hibernate's statistics, so the scheduled blob worker is parked
+            // (the run drains the log itself) and unthrottled
+            args.addAll(List.of(
+                    "--spring.jpa.properties.hibernate.generate_statistics=true",
+                    "--app.deletion.worker.interval-ms=86400000",
+                    "--app.deletion.worker.rate-per-second=1000000"));
+        }
+        if (options.scenario() == Scenario.GALLERY_DEPTH) {
+            // Seeded rows have no blobs, so there is nothing for the similarity backfill to fingerprint
+            args.add("--app.similarity.enabled=false");
+        }
+        // Later arguments win, so explicit overrides from the command line take precedence
+        args.addAll(options.applicationArgs());
+        return args.toArray(String[]::new);
+    }
+
+    private static List<TrafficDriver.Account> createAccounts(TrafficDriver driver, int count, ExecutorService executor)
+            throws Exception {
+        // Bounded so signups do not trip the hashing pool's load shedding more than necessary
+        Semaphore permits = new Semaphore(32);
+        List<Future<TrafficDriver.Account>> pending = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pending.add(executor.submit(() -> {
+                permits.acquire();
+                try {
+                    return driver.createAccount();
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+        List<TrafficDriver.Account> accounts = new ArrayList<>(count);
+        for (Future<TrafficDriver.Account> account : pending) {
+            accounts.add(account.get());
+        }
+        return accounts;
+    }
+
+    /**
+     * Runs the measured window, split into before/brownout/after phases when a brownout is set,
+     * and returns how long each phase lasted.
+     */
+    private static Map<String, Double> measure(LoadTestOptions options, StabilityStub stub) throws InterruptedException {
+        long durationMs = TimeUnit.SECONDS.toMillis(options.getInt("duration"));
+        Map<String, Double> seconds = new LinkedHashMap<>();
+        if (options.get("brownout-start").isEmpty()) {
+            phase = "steady";
+            Thread.sleep(durationMs);
+            phase = null;
+            seconds.put("steady", durationMs / 1000.0);
+            return seconds;
+        }
+
+        long startMs = TimeUnit.SECONDS.toMillis(options.getInt("brownout-start"));
+        long brownoutMs = Math.min(TimeUnit.SECONDS.toMillis(options.getInt("brownout-duration")), durationMs - startMs);
+        stub.scheduleBrownout(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(startMs),
+                TimeUnit.MILLISECONDS.toNanos(brownoutMs), options.getInt("brownout-latency-ms"),
+                options.getDouble("brownout-error-rate"));
+        phase = "before";
+        Thread.sleep(startMs);
+        log("Brownout started");
+        phase = "brownout";
+        Thread.sleep(brownoutMs);
+        log("Brownout ended");
+        phase = "after";
+        Thread.sleep(durationMs - startMs - brownoutMs);
+        phase = null;
+        seconds.put("before", startMs / 1000.0);
+        seconds.put("brownout", brownoutMs / 1000.0);
+        seconds.put("after", (durationMs - startMs - brownoutMs) / 1000.0);
+        return seconds;
+    }
+
+    private static Map<String, Object> report(LoadTestOptions options, TrafficDriver driver,
+                                              Map<String, Double> phaseSeconds, Map<String, Object> resources,
+                                              StabilityStub stub) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options.asMap());
+        report.put("applicationOverrides", options.applicationArgs());
+
+        Map<String, Object> phases = new LinkedHashMap<>();
+        System.out.printf("%n%-9s %-17s %8s %9s %7s %9s %9s %9s %9s %9s  %s%n", "phase", "operation", "count",
+                "ops/s", "err%", "rows/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "outcomes");
+        phaseSeconds.forEach((name, seconds) -> {
+            Map<String, Object> operations = new LinkedHashMap<>();
+            driver.stats().getOrDefault(name, Map.of()).entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(entry -> {
+                        Map<String, Object> summary = entry.getValue().summary(seconds);
+                        operations.put(entry.getKey().label(), summary);
+                        System.out.printf("%-9s %-17s %8d %9.2f %7.2f %9.2f %9.1f %9.1f %9.1f %9.1f  %s%n", name,
+                                entry.getKey().label(), summary.get("count"), summary.get("throughputPerSecond"),
+                                100 * (double) summary.get("errorRate"), summary.get("rowsPerSecond"),
+                                summary.get("p50Ms"), summary.get("p90Ms"), summary.get("p99Ms"),
+                                summary.get("maxMs"), summary.get("outcomes"));
+                    });
+            Map<String, Object> phaseReport = new LinkedHashMap<>();
+            phaseReport.put("seconds", seconds);
+            phaseReport.put("operations", operations);
+            phases.put(name, phaseReport);
+        });
+        report.put("phases", phases);
+
+        Map<String, Object> upstream = new LinkedHashMap<>();
+        upstream.put("requests", stub.requests());
+        upstream.put("injectedFailures", stub.failures());
+        report.put("upstream", upstream);
+        report.put("resources", resources);
+        System.out.printf("%nupstream %s%nresources %s%n", upstream, resources);
+        return report;
+    }
+
+    private static void writeReport(LoadTestOptions options, Map<String, Object> report) throws IOException {
+        File output = new File(options.get("report"));
+        if (output.getParentFile() != null) {
+            output.getParentFile().mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output, report);
+        log("Report written to %s", output.getAbsolutePath());
+    }
+
+    static void log(String format, Object... args) {
+        System.out.printf("[loadtest] " + format + "%n", args);
+    }
+}
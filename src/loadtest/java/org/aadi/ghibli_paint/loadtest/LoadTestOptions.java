@@ -0,0 +1,120 @@
+package org.aadi.ghibli_paint.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command-line options as {@code --key=value}. Keys the harness does not know but that look like
+ * Spring properties (they contain a dot) are passed through to the application, e.g.
+ * {@code --generation.jobs.workers=16}.
+ */
+public class LoadTestOptions {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("scenario", "mixed");
+        DEFAULTS.put("concurrency", "200");
+        DEFAULTS.put("users", "");                      // defaults to concurrency
+        DEFAULTS.put("duration", "60");                 // seconds measured
+        DEFAULTS.put("warmup", "10");                   // seconds before measuring
+        DEFAULTS.put("think-ms", "0");
+        DEFAULTS.put("mix", "");                        // e.g. login:10,generate:20,gallery:40,serve:30
+        DEFAULTS.put("generate-mode", "");              // jobs | reactive
+        DEFAULTS.put("batch-size", "20");
+        DEFAULTS.put("virtual-threads", "false");
+        DEFAULTS.put("request-timeout", "150");         // seconds
+        DEFAULTS.put("stub-latency-ms", "1500");        // median
+        DEFAULTS.put("stub-latency-p99-ms", "6000");
+        DEFAULTS.put("stub-payload-kb", "180");
+        DEFAULTS.put("stub-error-rate", "0");
+        DEFAULTS.put("brownout-start", "");             // seconds after warmup; blank = none
+        DEFAULTS.put("brownout-duration", "20");
+        DEFAULTS.put("brownout-latency-ms", "30000");
+        DEFAULTS.put("brownout-error-rate", "0.5");
+        DEFAULTS.put("images", "100000");               // account-delete, gallery-depth: gallery size
+        DEFAULTS.put("image-bytes", "2048");            // account-delete: size of each seeded blob
+        DEFAULTS.put("report", "target/loadtest-result.json");
+    }
+
+    private final Map<String, String> values = new LinkedHashMap<>(DEFAULTS);
+    private final List<String> applicationArgs = new ArrayList<>();
+
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value but got " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (DEFAULTS.containsKey(key)) {
+                options.values.put(key, value);
+            } else if (key.contains(".")) {
+                options.applicationArgs.add(arg);
+            } else {
+                throw new IllegalArgumentException("Unknown option --" + key + "; known: " + DEFAULTS.keySet());
+            }
+        }
+        Scenario scenario = options.scenario();
+        if (options.get("brownout-start").isEmpty() && scenario == Scenario.BROWNOUT) {
+            options.values.put("brownout-start", "20");
+        }
+        return options;
+    }
+
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    public int getInt(String key) {
+        return Integer.parseInt(values.get(key));
+    }
+
+    public double getDouble(String key) {
+        return Double.parseDouble(values.get(key));
+    }
+
+    public boolean getBoolean(String key) {
+        return Boolean.parseBoolean(values.get(key));
+    }
+
+    public Scenario scenario() {
+        return Scenario.of(values.get("scenario"));
+    }
+
+    public int users() {
+        return values.get("users").isEmpty() ? getInt("concurrency") : getInt("users");
+    }
+
+    public boolean reactiveGenerations() {
+        String mode = values.get("generate-mode");
+        return mode.isEmpty() ? scenario() == Scenario.REACTIVE : "reactive".equals(mode);
+    }
+
+    /**
+     * Operation weights: the scenario's own mix unless overridden with {@code --mix}.
+     */
+    public Map<Operation, Integer> mix() {
+        String mix = values.get("mix");
+        if (mix.isEmpty()) {
+            return scenario().mix();
+        }
+        Map<Operation, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split(":");
+            weights.put(Operation.of(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    public List<String> applicationArgs() {
+        return applicationArgs;
+    }
+
+    public Map<String, String> asMap() {
+        return values;
+    }
+}
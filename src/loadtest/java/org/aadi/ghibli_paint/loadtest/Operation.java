@@ -0,0 +1,31 @@
+package org.aadi.ghibli_paint.loadtest;
+
+import java.util.Arrays;
+
+public enum Operation {
+
+    SIGNUP("signup"),
+    LOGIN("login"),
+    GENERATE("generate"),
+    BATCH("batch"),
+    BATCH_SEQUENTIAL("batch-sequential"),
+    GALLERY("gallery"),
+    SERVE("serve");
+
+    private final String label;
+
+    Operation(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public static Operation of(String label) {
+        return Arrays.stream(values())
+                .filter(operation -> operation.label.equals(label))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown operation " + label));
+    }
+}
@@ -0,0 +1,68 @@
+package org.aadi.ghibli_paint.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and outcome counts for one operation in one phase. Outcomes are HTTP status
+ * codes, or "timeout"/"io_error" when no response came back; anything but 2xx counts as an error.
+ */
+public class OperationStats {
+
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Histogram latencies = new ConcurrentHistogram(MAX_MICROS, 3);
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final LongAdder rows = new LongAdder();
+
+    public void record(long elapsedNanos, String outcome, int rowsCreated) {
+        latencies.recordValue(Math.min(MAX_MICROS, TimeUnit.NANOSECONDS.toMicros(elapsedNanos)));
+        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+        rows.add(rowsCreated);
+    }
+
+    public long count() {
+        return latencies.getTotalCount();
+    }
+
+    public long errors() {
+        return outcomes.entrySet().stream()
+                .filter(entry -> !entry.getKey().startsWith("2"))
+                .mapToLong(entry -> entry.getValue().sum())
+                .sum();
+    }
+
+    public Map<String, Object> summary(double seconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long count = count();
+        summary.put("count", count);
+        summary.put("throughputPerSecond", round(count / seconds));
+        summary.put("errorRate", count == 0 ? 0 : round((double) errors() / count));
+        summary.put("rowsCreated", rows.sum());
+        summary.put("rowsPerSecond", round(rows.sum() / seconds));
+        summary.put("p50Ms", millis(latencies.getValueAtPercentile(50)));
+        summary.put("p90Ms", millis(latencies.getValueAtPercentile(90)));
+        summary.put("p99Ms", millis(latencies.getValueAtPercentile(99)));
+        summary.put("p999Ms", millis(latencies.getValueAtPercentile(99.9)));
+        summary.put("maxMs", millis(latencies.getMaxValue()));
+        Map<String, Long> byOutcome = new TreeMap<>();
+        outcomes.forEach((outcome, total) -> byOutcome.put(outcome, total.sum()));
+        summary.put("outcomes", byOutcome);
+        return summary;
+    }
+
+    private static double millis(long micros) {
+        return round(micros / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
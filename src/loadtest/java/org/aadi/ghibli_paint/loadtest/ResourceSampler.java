@@ -0,0 +1,72 @@
+package org.aadi.ghibli_paint.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples heap and platform-thread counts once a second. The application runs in this JVM, so
+ * the numbers include the harness; its own footprint is a few platform threads (the load is
+ * driven from virtual threads, which the thread MXBean does not count) and the histograms.
+ */
+public class ResourceSampler {
+
+    private static final double MB = 1024 * 1024;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "loadtest-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long samples;
+    private long heapUsedSum;
+    private long heapUsedMax;
+    private long threadSum;
+    private int threadMax;
+    private long gcMillisAtStart;
+
+    public void start() {
+        threads.resetPeakThreadCount();
+        gcMillisAtStart = gcMillis();
+        scheduler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+    }
+
+    public synchronized Map<String, Object> stop() {
+        scheduler.shutdownNow();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("heapUsedAvgMb", samples == 0 ? 0 : Math.round(heapUsedSum / samples / MB));
+        summary.put("heapUsedMaxMb", Math.round(heapUsedMax / MB));
+        summary.put("heapMaxMb", Math.round(memory.getHeapMemoryUsage().getMax() / MB));
+        summary.put("threadsAvg", samples == 0 ? 0 : threadSum / samples);
+        summary.put("threadsMax", threadMax);
+        summary.put("threadsPeak", threads.getPeakThreadCount());
+        summary.put("gcTimeMillis", gcMillis() - gcMillisAtStart);
+        return summary;
+    }
+
+    private synchronized void sample() {
+        long heapUsed = memory.getHeapMemoryUsage().getUsed();
+        int threadCount = threads.getThreadCount();
+        samples++;
+        heapUsedSum += heapUsed;
+        heapUsedMax = Math.max(heapUsedMax, heapUsed);
+        threadSum += threadCount;
+        threadMax = Math.max(threadMax, threadCount);
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(time -> time > 0)
+                .sum();
+    }
+}
@@ -0,0 +1,55 @@
+package org.aadi.ghibli_paint.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Canned traffic shapes. Each is just a default operation mix; concurrency, stub behaviour and
+ * application settings are independent options.
+ */
+public enum Scenario {
+
+    /** Browsing-heavy traffic with a steady share of generations. */
+    MIXED("mixed", Map.of(Operation.SIGNUP, 2, Operation.LOGIN, 8, Operation.GENERATE, 20,
+            Operation.GALLERY, 40, Operation.SERVE, 30)),
+    /** Every user logging in back to back: password hashing pool and login latency. */
+    LOGIN_STORM("login-storm", Map.of(Operation.LOGIN, 1)),
+    /** Only queued generations; compare runs with --virtual-threads=true and false. */
+    GENERATE("generate", Map.of(Operation.GENERATE, 1)),
+    /** Only inline non-blocking generations. */
+    REACTIVE("reactive", Map.of(Operation.GENERATE, 1)),
+    /** One batch request of --batch-size prompts per operation. */
+    BATCH("batch", Map.of(Operation.BATCH, 1)),
+    /** The same prompts as BATCH, sent as sequential single generations, for rows/sec comparison. */
+    BATCH_SEQUENTIAL("batch-sequential", Map.of(Operation.BATCH_SEQUENTIAL, 1)),
+    /** MIXED traffic with an upstream brownout window (see --brownout-*). */
+    BROWNOUT("brownout", MIXED.mix),
+    /** No traffic: one DELETE /api/users/{id} of an account seeded with --images gallery rows. */
+    ACCOUNT_DELETE("account-delete", Map.of()),
+    /** No traffic: first-page against deep-cursor gallery latency for an account of --images rows. */
+    GALLERY_DEPTH("gallery-depth", Map.of());
+
+    private final String label;
+    private final Map<Operation, Integer> mix;
+
+    Scenario(String label, Map<Operation, Integer> mix) {
+        this.label = label;
+        this.mix = new LinkedHashMap<>(mix);
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public Map<Operation, Integer> mix() {
+        return new LinkedHashMap<>(mix);
+    }
+
+    public static Scenario of(String label) {
+        return Arrays.stream(values())
+                .filter(scenario -> scenario.label.equals(label))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown scenario " + label));
+    }
+}
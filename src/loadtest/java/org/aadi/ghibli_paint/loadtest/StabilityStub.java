@@ -0,0 +1,148 @@
+package org.aadi.ghibli_paint.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the Stability AI v2beta image endpoints. Latency is log-normal around a median
+ * with a configurable p99; a fraction of calls answer 503, and an optional brownout window
+ * replaces both with its own (much worse) latency and error rate. Each exchange runs on its own
+ * virtual thread, so slow responses cost the stub nothing.
+ */
+public class StabilityStub {
+
+    private static final double Z_99 = 2.326;
+    private static final byte[] OVERLOADED = "{\"name\":\"service_unavailable\",\"errors\":[\"stub overload\"]}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final double medianMs;
+    private final double sigma;
+    private final double errorRate;
+    private final byte[] payload;
+
+    private volatile long brownoutFromNanos = Long.MAX_VALUE;
+    private volatile long brownoutUntilNanos = Long.MAX_VALUE;
+    private volatile long brownoutLatencyMs;
+    private volatile double brownoutErrorRate;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public StabilityStub(double medianMs, double p99Ms, double errorRate, int payloadBytes) {
+        this.medianMs = medianMs;
+        this.sigma = p99Ms > medianMs ? Math.log(p99Ms / medianMs) / Z_99 : 0;
+        this.errorRate = errorRate;
+        this.payload = samplePng(payloadBytes);
+    }
+
+    /**
+     * A real 1024x1024 PNG, so derivative generation decodes it as it would a Stability image,
+     * padded with random bytes after IEND (which decoders ignore) to reach the requested size.
+     */
+    private static byte[] samplePng(int payloadBytes) {
+        BufferedImage image = new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, 1024, 1024, Color.BLUE));
+        graphics.fillRect(0, 0, 1024, 1024);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] png = out.toByteArray();
+        if (png.length >= payloadBytes) {
+            return png;
+        }
+        byte[] padded = new byte[payloadBytes];
+        new Random(42).nextBytes(padded);
+        System.arraycopy(png, 0, padded, 0, png.length);
+        return padded;
+    }
+
+    public void start() throws IOException {
+        // Without TCP_NODELAY the JDK server's header/body writes hit the ~40 ms delayed-ACK stall
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.createContext("/v2beta/stable-image/generate/", this::handle);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v2beta/stable-image";
+    }
+
+    public void scheduleBrownout(long fromNanos, long durationNanos, long latencyMs, double errorRate) {
+        brownoutLatencyMs = latencyMs;
+        brownoutErrorRate = errorRate;
+        brownoutUntilNanos = fromNanos + durationNanos;
+        brownoutFromNanos = fromNanos;
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            requests.incrementAndGet();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long now = System.nanoTime();
+            boolean brownout = now >= brownoutFromNanos && now < brownoutUntilNanos;
+            long latencyMs = brownout ? brownoutLatencyMs : Math.round(medianMs * Math.exp(sigma * random.nextGaussian()));
+            boolean fail = random.nextDouble() < (brownout ? brownoutErrorRate : errorRate);
+
+            Thread.sleep(latencyMs);
+            if (fail) {
+                failures.incrementAndGet();
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(503, OVERLOADED.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(OVERLOADED);
+                }
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, payload.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(payload);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
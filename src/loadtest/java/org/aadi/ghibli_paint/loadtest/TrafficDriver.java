@@ -0,0 +1,294 @@
+package org.aadi.ghibli_paint.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Closed-loop virtual users: each one logs in, then repeatedly picks an operation from the mix,
+ * runs it to completion and records the outcome under the current phase. Queued generations are
+ * polled to completion, so their latency is what a user waits for, not the 202.
+ */
+public class TrafficDriver {
+
+    public record Account(String username, String password) {
+    }
+
+    private record Outcome(String status, int rows) {
+
+        static Outcome of(int status) {
+            return new Outcome(String.valueOf(status), 0);
+        }
+    }
+
+    private static final String PASSWORD = "loadtest-password";
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(250);
+
+    private final LoadTestOptions options;
+    private final String baseUrl;
+    private final Supplier<String> phase;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Duration requestTimeout;
+
+    private final Map<String, Map<Operation, OperationStats>> stats = new ConcurrentHashMap<>();
+    // Recently generated files for the serve operation; a ring, so old entries are overwritten
+    private final AtomicReferenceArray<String> servedFiles = new AtomicReferenceArray<>(4096);
+    private final AtomicInteger servedFileCount = new AtomicInteger();
+    private final AtomicInteger accountSequence = new AtomicInteger();
+    private final AtomicInteger promptSequence = new AtomicInteger();
+
+    private final Operation[] weighted;
+
+    public TrafficDriver(LoadTestOptions options, String baseUrl, Supplier<String> phase, HttpClient client) {
+        this.options = options;
+        this.baseUrl = baseUrl;
+        this.phase = phase;
+        this.client = client;
+        this.requestTimeout = Duration.ofSeconds(options.getInt("request-timeout"));
+        List<Operation> table = new ArrayList<>();
+        options.mix().forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                table.add(operation);
+            }
+        });
+        this.weighted = table.toArray(Operation[]::new);
+    }
+
+    public Map<String, Map<Operation, OperationStats>> stats() {
+        return stats;
+    }
+
+    /**
+     * Creates an account, retrying while the password-hashing pool sheds load.
+     */
+    public Account createAccount() throws InterruptedException {
+        String username = "lt" + accountSequence.incrementAndGet() + "_" + Long.toString(System.nanoTime(), 36);
+        String body = json(Map.of("username", username, "email", username + "@loadtest.local", "password", PASSWORD));
+        for (int attempt = 0; attempt < 50; attempt++) {
+            try {
+                HttpResponse<String> response = send(post("/api/auth/signup", body).build());
+                if (response.statusCode() == 200) {
+                    return new Account(username, PASSWORD);
+                }
+            } catch (IOException e) {
+                // fall through to retry
+            }
+            Thread.sleep(100L * (attempt + 1));
+        }
+        throw new IllegalStateException("Could not create account " + username);
+    }
+
+    /**
+     * Runs one virtual user until {@code running} turns false.
+     */
+    public void run(Account account, Supplier<Boolean> running) throws InterruptedException {
+        String token = null;
+        long thinkMs = options.getInt("think-ms");
+        while (running.get()) {
+            if (token == null) {
+                token = login(account);
+                if (token == null) {
+                    Thread.sleep(200);
+                    continue;
+                }
+            }
+            Operation operation = weighted[ThreadLocalRandom.current().nextInt(weighted.length)];
+            if (operation == Operation.SERVE && servedFileCount.get() == 0) {
+                operation = Operation.GALLERY;
+            }
+            String currentPhase = phase.get();
+            long start = System.nanoTime();
+            Outcome outcome;
+            try {
+                outcome = execute(operation, account, token);
+            } catch (HttpTimeoutException e) {
+                outcome = new Outcome("timeout", 0);
+            } catch (IOException e) {
+                outcome = new Outcome("io_error", 0);
+            }
+            if (currentPhase != null) {
+                stats.computeIfAbsent(currentPhase, key -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(operation, key -> new OperationStats())
+                        .record(System.nanoTime() - start, outcome.status(), outcome.rows());
+            }
+            if ("401".equals(outcome.status()) || "403".equals(outcome.status())) {
+                token = null;
+            }
+            if (thinkMs > 0) {
+                Thread.sleep(thinkMs);
+            }
+        }
+    }
+
+    private Outcome execute(Operation operation, Account account, String token)
+            throws IOException, InterruptedException {
+        return switch (operation) {
+            case SIGNUP -> {
+                String username = "lt" + accountSequence.incrementAndGet() + "_" + Long.toString(System.nanoTime(), 36);
+                yield Outcome.of(send(post("/api/auth/signup", json(Map.of("username", username,
+                        "email", username + "@loadtest.local", "password", PASSWORD))).build()).statusCode());
+            }
+            case LOGIN -> {
+                HttpResponse<String> response = send(post("/api/auth/login",
+                        json(Map.of("username", account.username(), "password", account.password()))).build());
+                yield Outcome.of(response.statusCode());
+            }
+            case GENERATE -> options.reactiveGenerations() ? generateReactive(token) : generateQueued(token);
+            case BATCH -> batch(token);
+            case BATCH_SEQUENTIAL -> {
+                int rows = 0;
+                String status = "200";
+                for (int i = 0; i < options.getInt("batch-size"); i++) {
+                    Outcome single = generateReactive(token);
+                    rows += single.rows();
+                    if (single.rows() == 0) {
+                        status = single.status();
+                    }
+                }
+                yield new Outcome(status, rows);
+            }
+            case GALLERY -> Outcome.of(send(get("/api/images/gallery?limit=30", token)).statusCode());
+            case SERVE -> {
+                int index = ThreadLocalRandom.current().nextInt(Math.min(servedFileCount.get(), servedFiles.length()));
+                HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/images/serve/" + servedFiles.get(index)))
+                        .timeout(requestTimeout)
+                        .GET()
+                        .build();
+                yield Outcome.of(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+            }
+        };
+    }
+
+    private String login(Account account) throws InterruptedException {
+        try {
+            HttpResponse<String> response = send(post("/api/auth/login",
+                    json(Map.of("username", account.username(), "password", account.password()))).build());
+            return response.statusCode() == 200 ? objectMapper.readTree(response.body()).path("token").asText() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Outcome generateReactive(String token) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(post("/api/images/generate/reactive/text-to-image",
+                json(Map.of("prompt", nextPrompt()))).header("Authorization", "Bearer " + token).build());
+        if (response.statusCode() == 200) {
+            remember(objectMapper.readTree(response.body()));
+            return new Outcome("200", 1);
+        }
+        return Outcome.of(response.statusCode());
+    }
+
+    private Outcome generateQueued(String token) throws IOException, InterruptedException {
+        HttpResponse<String> submitted = send(post("/api/images/generate/text-to-image",
+                json(Map.of("prompt", nextPrompt()))).header("Authorization", "Bearer " + token).build());
+        if (submitted.statusCode() != 202) {
+            return Outcome.of(submitted.statusCode());
+        }
+        String jobId = objectMapper.readTree(submitted.body()).path("id").asText();
+        long deadline = System.nanoTime() + requestTimeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(POLL_INTERVAL);
+            HttpResponse<String> polled = send(get("/api/images/jobs/" + jobId, token));
+            if (polled.statusCode() != 200) {
+                return Outcome.of(polled.statusCode());
+            }
+            JsonNode job = objectMapper.readTree(polled.body());
+            switch (job.path("status").asText()) {
+                case "SUCCEEDED" -> {
+                    remember(job.path("result"));
+                    return new Outcome("200", 1);
+                }
+                case "FAILED" -> {
+                    return new Outcome("job_failed", 0);
+                }
+                default -> {
+                    // still queued or running
+                }
+            }
+        }
+        return new Outcome("timeout", 0);
+    }
+
+    private Outcome batch(String token) throws IOException, InterruptedException {
+        List<String> prompts = Stream.generate(this::nextPrompt).limit(options.getInt("batch-size")).toList();
+        HttpResponse<Stream<String>> response = client.send(post("/api/images/generate/batch",
+                        json(Map.of("prompts", prompts))).header("Authorization", "Bearer " + token).build(),
+                HttpResponse.BodyHandlers.ofLines());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            return Outcome.of(response.statusCode());
+        }
+        int rows = 0;
+        try (Stream<String> lines = response.body()) {
+            for (String line : (Iterable<String>) lines::iterator) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode item = objectMapper.readTree(line);
+                if ("SUCCEEDED".equals(item.path("status").asText())) {
+                    rows++;
+                    remember(item.path("image"));
+                }
+            }
+        }
+        return new Outcome(rows == prompts.size() ? "200" : "partial", rows);
+    }
+
+    private void remember(JsonNode image) {
+        String url = image.path("imageUrl").asText(null);
+        if (url != null) {
+            int slot = servedFileCount.getAndIncrement() % servedFiles.length();
+            servedFiles.set(slot, url.substring(url.lastIndexOf('/') + 1));
+        }
+    }
+
+    private String nextPrompt() {
+        // Unique prompts, so every generation misses the result cache and reaches the stub
+        return "load test prompt " + promptSequence.incrementAndGet() + " " + System.nanoTime();
+    }
+
+    private HttpRequest.Builder post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private HttpRequest get(String path, String token) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(requestTimeout)
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
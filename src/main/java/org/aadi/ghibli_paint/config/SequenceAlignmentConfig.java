@@ -0,0 +1,36 @@
+package org.aadi.ghibli_paint.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * generated_images used to take ids from an IDENTITY column. When the pooled sequence that
+ * replaced it is first created it starts at 1, so before any insert it is moved past the
+ * highest existing id. Depends on the EntityManagerFactory so schema update has already run.
+ */
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class SequenceAlignmentConfig {
+
+    private static final int ALLOCATION_SIZE = 50;  // matches @SequenceGenerator on GeneratedImage
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    void alignGeneratedImageSequence() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM generated_images", Long.class);
+        Long next = jdbcTemplate.queryForObject("SELECT nextval('generated_images_seq')", Long.class);
+        // The pooled optimizer hands out (value - allocationSize, value], so the whole block must clear maxId
+        if (maxId != null && next != null && next - ALLOCATION_SIZE < maxId) {
+            long restart = maxId + ALLOCATION_SIZE;
+            jdbcTemplate.execute("ALTER SEQUENCE generated_images_seq RESTART WITH " + restart);
+            log.info("Moved generated_images_seq to {} (max id {})", restart, maxId);
+        }
+    }
+}
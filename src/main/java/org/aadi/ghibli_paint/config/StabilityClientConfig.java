@@ -0,0 +1,75 @@
+package org.aadi.ghibli_paint.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+@Configuration
+public class StabilityClientConfig {
+
+    @Value("${stability.api.url}")
+    private String apiUrl;
+
+    @Value("${stability.api.key}")
+    private String apiKey;
+
+    @Value("${stability.client.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${stability.client.pending-acquire-max:200}")
+    private int pendingAcquireMax;
+
+    @Value("${stability.client.pending-acquire-timeout-ms:10000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${stability.client.max-idle-time-seconds:30}")
+    private long maxIdleTimeSeconds;
+
+    @Value("${stability.client.max-life-time-seconds:300}")
+    private long maxLifeTimeSeconds;
+
+    @Value("${stability.client.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider stabilityConnectionProvider() {
+        return ConnectionProvider.builder("stability")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(maxIdleTimeSeconds))
+                .build();
+    }
+
+    /**
+     * Single client for all Stability AI calls, so connections and TLS sessions are reused
+     * across generations instead of being rebuilt per request. Response timeouts differ per
+     * endpoint, so they are set per request (see {@link org.aadi.ghibli_paint.service.StabilityResilienceService}).
+     */
+    @Bean
+    public WebClient stabilityWebClient(WebClient.Builder builder, ConnectionProvider stabilityConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(stabilityConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                // Multipart bodies go out as several small writes; with Nagle on, each call stalls on a delayed ACK
+                .option(ChannelOption.TCP_NODELAY, true)
+                .keepAlive(true);
+
+        return builder
+                .baseUrl(apiUrl)
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .defaultHeader(HttpHeaders.ACCEPT, "image/*")  // As per docs curl
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
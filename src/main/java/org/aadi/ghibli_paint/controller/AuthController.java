@@ -4,11 +4,16 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.aadi.ghibli_paint.dto.AuthRequest;
 import org.aadi.ghibli_paint.dto.AuthResponse;
+import org.aadi.ghibli_paint.dto.AvailabilityResponse;
 import org.aadi.ghibli_paint.dto.SignupRequest;
 import org.aadi.ghibli_paint.service.AuthService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/api/auth")
 @RequiredArgsConstructor
@@ -22,6 +27,8 @@ public class AuthController {
         try {
             AuthResponse response = authService.signup(request);
             return ResponseEntity.ok(response);
+        } catch (RejectedExecutionException e) {
+            return overloaded();
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
@@ -32,8 +39,26 @@ public class AuthController {
         try {
             AuthResponse response = authService.login(request);
             return ResponseEntity.ok(response);
+        } catch (RejectedExecutionException e) {
+            return overloaded();
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
+
+    @GetMapping("/availability")
+    public ResponseEntity<AvailabilityResponse> availability(@RequestParam(required = false) String username,
+                                                             @RequestParam(required = false) String email) {
+        if (username == null && email == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(authService.availability(username, email));
+    }
+
+    // Password hashing pool is saturated; shed the request rather than queue it on a Tomcat thread
+    private ResponseEntity<AuthResponse> overloaded() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .build();
+    }
 }
@@ -1,21 +1,52 @@
 package org.aadi.ghibli_paint.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.aadi.ghibli_paint.dto.BatchGenerationRequest;
+import org.aadi.ghibli_paint.dto.BatchItemResult;
+import org.aadi.ghibli_paint.dto.GalleryPage;
+import org.aadi.ghibli_paint.dto.GenerationJob;
+import org.aadi.ghibli_paint.dto.SimilarImage;
 import org.aadi.ghibli_paint.entity.GeneratedImage;
+import org.aadi.ghibli_paint.service.FileTransferService;
+import org.aadi.ghibli_paint.service.GalleryService;
+import org.aadi.ghibli_paint.service.GenerationJobService;
+import org.aadi.ghibli_paint.service.ImageServingService;
+import org.aadi.ghibli_paint.service.ImageStore;
+import org.aadi.ghibli_paint.service.ImageStorageService;
+import org.aadi.ghibli_paint.service.RateLimiterService;
+import org.aadi.ghibli_paint.service.RateLimiterService.Policy;
+import org.aadi.ghibli_paint.service.SimilarImageService;
 import org.aadi.ghibli_paint.service.StabilityAIService;
+import org.aadi.ghibli_paint.service.UpstreamUnavailableException;
+import org.aadi.ghibli_paint.service.UserService;
+import org.aadi.ghibli_paint.util.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/images")
@@ -23,38 +54,163 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class ImageController {
 
+    @Value("${generation.batch.max-prompts:50}")
+    private int maxBatchPrompts;
+
+    @Value("${spring.mvc.async.request-timeout:130s}")
+    private Duration batchTimeout;
+
+    @Value("${app.deletion.max-ids-per-request:1000}")
+    private int maxDeleteIds;
+
     private final StabilityAIService stabilityAIService;
+    private final GenerationJobService generationJobService;
+    private final GalleryService galleryService;
+    private final SimilarImageService similarImageService;
+    private final ImageStorageService imageStorageService;
+    private final FileTransferService fileTransferService;
+    private final ImageServingService imageServingService;
+    private final RateLimiterService rateLimiterService;
+    private final UserService userService;
 
     @PostMapping(value = "/generate/text-to-image", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<GeneratedImage> generateImageFromText(@RequestBody Map<String, String> body) {
+    public ResponseEntity<GenerationJob> generateImageFromText(@RequestBody Map<String, String> body) {
         String prompt = body.get("prompt");
         if (prompt == null || prompt.trim().isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
         try {
-            GeneratedImage image = stabilityAIService.generateImageFromText(prompt);
-            return ResponseEntity.ok(image);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
+            return accepted(generationJobService.submitTextToImage(prompt));
+        } catch (RejectedExecutionException e) {
+            return queueFull();
         }
     }
 
     @PostMapping(value = "/generate/image-to-image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<GeneratedImage> generateImageFromImage(
+    public ResponseEntity<GenerationJob> generateImageFromImage(
             @RequestParam("prompt") String prompt,
             @RequestParam("image") MultipartFile imageFile) {
         try {
-            GeneratedImage image = stabilityAIService.generateImageFromImage(prompt, imageFile);
-            return ResponseEntity.ok(image);
+            return accepted(generationJobService.submitImageToImage(prompt, imageFile));
+        } catch (RejectedExecutionException e) {
+            return queueFull();
         } catch (IOException e) {
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    /**
+     * Generates inline without a job record. The Tomcat thread is released immediately and the
+     * response is written when the Mono completes, so in-flight generations hold no request threads.
+     */
+    @PostMapping(value = "/generate/reactive/text-to-image", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<GeneratedImage>> generateImageFromTextReactive(@RequestBody Map<String, String> body) {
+        String prompt = body.get("prompt");
+        if (prompt == null || prompt.trim().isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return completed(stabilityAIService.generateImageFromTextReactive(prompt));
+    }
+
+    @PostMapping(value = "/generate/reactive/image-to-image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<GeneratedImage>> generateImageFromImageReactive(
+            @RequestParam("prompt") String prompt,
+            @RequestParam("image") MultipartFile imageFile) {
+        Path staged;
+        try {
+            staged = imageStorageService.stageUpload(imageFile);
+        } catch (IOException e) {
+            return Mono.just(ResponseEntity.internalServerError().build());
+        }
+        String originalFilename = imageFile.getOriginalFilename();
+        FileSystemResource image = new FileSystemResource(staged) {
+            @Override
+            public String getFilename() {
+                return originalFilename;
+            }
+        };
+        return completed(stabilityAIService.generateImageFromImageReactive(prompt, image))
+                .doFinally(signal -> imageStorageService.discard(staged));
+    }
+
+    /**
+     * Streams one result per prompt as each finishes: newline-delimited JSON by default, or SSE
+     * when the client asks for text/event-stream. A client that disconnects cancels the prompts
+     * that have not started yet. Each prompt costs one GENERATE token, the same as a single
+     * generation.
+     */
+    @PostMapping(value = "/generate/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> generateBatch(
+            @Valid @RequestBody BatchGenerationRequest request,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletResponse response) {
+        if (request.getPrompts().size() > maxBatchPrompts) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (rateLimiterService.isEnabled()) {
+            TokenBucket.Decision decision = rateLimiterService.tryAcquire(
+                    userService.getCurrentUserId(), Policy.GENERATE, request.getPrompts().size());
+            // Replaces the BATCH headers the filter wrote: the GENERATE bucket is the one that binds
+            rateLimiterService.headersFor(Policy.GENERATE, decision)
+                    .forEach((name, values) -> response.setHeader(name, values.get(0)));
+            if (!decision.allowed()) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+            }
+        }
+        Flux<BatchItemResult> results;
+        try {
+            results = stabilityAIService.generateBatchFromText(request.getPrompts(), request.getConcurrency());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+        boolean sse = accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE);
+        return ResponseEntity.ok()
+                .contentType(sse ? MediaType.TEXT_EVENT_STREAM : MediaType.APPLICATION_NDJSON)
+                .body(stream(results, sse));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<GenerationJob> getJob(@PathVariable String jobId) {
+        return generationJobService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable String jobId) {
+        return generationJobService.getJob(jobId)
+                .map(job -> ResponseEntity.ok(generationJobService.subscribe(job)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @GetMapping("/gallery")
-    public ResponseEntity<List<GeneratedImage>> getUserGallery() {
-        List<GeneratedImage> images = stabilityAIService.getUserImages();
-        return ResponseEntity.ok(images);
+    public ResponseEntity<GalleryPage> getUserGallery(@RequestParam(required = false) Integer limit,
+                                                      @RequestParam(required = false) String after,
+                                                      @RequestParam(defaultValue = "false") boolean hideSimilar) {
+        try {
+            return ResponseEntity.ok(galleryService.getPage(limit, after, hideSimilar));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * The caller's images that look like this one, nearest first; {@code radius} is the number of
+     * differing perceptual-hash bits allowed. Empty until the image has been fingerprinted.
+     */
+    @GetMapping("/{imageId}/similar")
+    public ResponseEntity<List<SimilarImage>> getSimilarImages(@PathVariable Long imageId,
+                                                               @RequestParam(required = false) Integer radius,
+                                                               @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(similarImageService.findSimilar(imageId, radius, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
     }
 
     @DeleteMapping("/{imageId}")
@@ -67,47 +223,106 @@ public class ImageController {
         }
     }
 
-    @GetMapping("/download/{imageId}")
-    public ResponseEntity<Resource> downloadImage(@PathVariable Long imageId) {
+    /**
+     * Bulk variant of {@code DELETE /{imageId}}, e.g. {@code DELETE /api/images?ids=1,2,3}. Ids that
+     * are not the caller's are skipped; the response says how many were deleted.
+     */
+    @DeleteMapping
+    public ResponseEntity<Map<String, Integer>> deleteImages(@RequestParam List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > maxDeleteIds) {
+            return ResponseEntity.badRequest().build();
+        }
         try {
-            GeneratedImage image = stabilityAIService.getUserImages().stream()
-                    .filter(img -> img.getId().equals(imageId))
-                    .findFirst()
-                    .orElseThrow(() -> new RuntimeException("Image not found"));
-
-            // Extract filename from URL (e.g., "http://localhost:8080/api/images/serve/uuid.png" -> "uuid.png")
-            String filename = image.getImageUrl().substring(image.getImageUrl().lastIndexOf('/') + 1);
-            Path path = Paths.get("generated-images").resolve(filename);
-            Resource resource = new FileSystemResource(path);
-
-            if (!resource.exists()) {
-                return ResponseEntity.notFound().build();
-            }
-
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + image.getOriginalFilename() + "\"")
-                    .contentType(MediaType.IMAGE_PNG)
-                    .body(resource);
+            return ResponseEntity.ok(Map.of("deleted", stabilityAIService.deleteImages(ids)));
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
-    @GetMapping("/serve/{filename}")
-    public ResponseEntity<Resource> serveImage(@PathVariable String filename) {
+    @GetMapping("/download/{imageId}")
+    public void downloadImage(@PathVariable Long imageId,
+                              HttpServletRequest request,
+                              HttpServletResponse response) throws IOException {
+        GeneratedImage image;
         try {
-            Path path = Paths.get("generated-images").resolve(filename);
-            Resource resource = new FileSystemResource(path);
+            image = stabilityAIService.getUserImage(imageId);
+        } catch (Exception e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
-            if (!resource.exists()) {
-                return ResponseEntity.notFound().build();
-            }
+        String key = imageStorageService.keyOf(image);
+        Optional<ImageStore.Stat> stat = imageStorageService.stat(key);
+        if (stat.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.IMAGE_PNG)
-                    .body(resource);
-        } catch (Exception e) {
-            return ResponseEntity.badRequest().build();
+        MediaType contentType = imageStorageService.contentTypeOf(key);
+        String contentDisposition = "attachment; filename=\"" + image.getOriginalFilename() + "\"";
+        Optional<URI> presigned = imageStorageService.presignedGet(key, contentType, contentDisposition);
+        if (presigned.isPresent()) {
+            // The URL is signed for this user's request only
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+            response.sendRedirect(presigned.get().toString());
+            return;
         }
+        String etag = image.getContentHash() != null ? "\"" + image.getContentHash() + "\"" : null;
+        fileTransferService.transfer(request, response, key, stat.get(), contentType, etag, contentDisposition);
+    }
+
+    @GetMapping("/serve/{filename}")
+    public void serveImage(@PathVariable String filename,
+                           @RequestParam(name = "w", required = false) Integer width,
+                           @RequestParam(defaultValue = "false") boolean compact,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        imageServingService.serve(filename, width, compact, request, response);
+    }
+
+    private ResponseEntity<GenerationJob> accepted(GenerationJob job) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/images/jobs/" + job.getId()))
+                .body(job);
+    }
+
+    private ResponseBodyEmitter stream(Flux<BatchItemResult> results, boolean sse) {
+        ResponseBodyEmitter emitter = sse ? new SseEmitter(batchTimeout.toMillis()) : new ResponseBodyEmitter(batchTimeout.toMillis());
+        // Writes can block on a slow client, so they stay off the event loop and the persistence pool
+        Disposable subscription = results
+                .publishOn(Schedulers.boundedElastic())
+                .subscribe(item -> {
+                    try {
+                        if (sse) {
+                            ((SseEmitter) emitter).send(SseEmitter.event().name("result").data(item));
+                        } else {
+                            emitter.send(item, MediaType.APPLICATION_JSON);
+                            emitter.send("\n", MediaType.TEXT_PLAIN);
+                        }
+                    } catch (IOException e) {
+                        throw Exceptions.propagate(e);
+                    }
+                }, emitter::completeWithError, emitter::complete);
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(error -> subscription.dispose());
+        return emitter;
+    }
+
+    private Mono<ResponseEntity<GeneratedImage>> completed(Mono<GeneratedImage> generation) {
+        return generation
+                .map(ResponseEntity::ok)
+                .onErrorResume(RejectedExecutionException.class, e -> Mono.just(
+                        ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "5").build()))
+                .onErrorResume(UpstreamUnavailableException.class, e -> Mono.just(
+                        ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                                .build()))
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+
+    private ResponseEntity<GenerationJob> queueFull() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .build();
     }
 }
\ No newline at end of file
@@ -24,6 +24,16 @@ public class UserController {
         }
     }
 
+    @PostMapping("/{userId}/deactivate")
+    public ResponseEntity<Void> deactivateAccount(@PathVariable Long userId) {
+        try {
+            userService.deactivateAccount(userId);
+            return ResponseEntity.ok().build();
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @DeleteMapping("/{userId}")
     public ResponseEntity<Void> deleteAccount(@PathVariable Long userId) {
         try {
@@ -0,0 +1,15 @@
+package org.aadi.ghibli_paint.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchGenerationRequest {
+    @NotEmpty(message = "At least one prompt is required")
+    private List<@NotBlank String> prompts;
+
+    private Integer concurrency;  // optional, capped by generation.batch.max-concurrency
+}
@@ -0,0 +1,19 @@
+package org.aadi.ghibli_paint.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.aadi.ghibli_paint.entity.GeneratedImage;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    private int index;  // position of the prompt in the request; results arrive in completion order
+    private String prompt;
+    private GenerationJob.Status status;  // SUCCEEDED or FAILED
+    private GeneratedImage image;
+    private String error;
+}
@@ -0,0 +1,24 @@
+package org.aadi.ghibli_paint.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GalleryItem {
+    private Long id;
+    private String prompt;
+    private String imageUrl;
+    private String imageType;
+    private Long fileSize;
+    private Integer width;
+    private Integer height;
+    private LocalDateTime createdAt;
+    @JsonIgnore
+    private Long perceptualHash;  // for hiding near-duplicates within a page
+}
@@ -0,0 +1,15 @@
+package org.aadi.ghibli_paint.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GalleryPage {
+    private List<GalleryItem> items;
+    private String nextCursor;  // null on the last page
+}
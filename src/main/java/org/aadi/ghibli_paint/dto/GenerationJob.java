@@ -0,0 +1,106 @@
+package org.aadi.ghibli_paint.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.aadi.ghibli_paint.entity.GeneratedImage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+@Getter
+public class GenerationJob {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    private final String id;
+
+    @JsonIgnore
+    private final Long userId;
+
+    private final String type; // "text-to-image" or "image-to-image"
+
+    private final LocalDateTime createdAt = LocalDateTime.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile GeneratedImage result;
+    private volatile String error;
+    private volatile LocalDateTime completedAt;
+
+    @JsonIgnore
+    private final List<Consumer<GenerationJob>> listeners = new CopyOnWriteArrayList<>();
+
+    // A lock rather than synchronized so virtual threads waiting on it unmount instead of pinning
+    @Getter(AccessLevel.NONE)
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public GenerationJob(String id, Long userId, String type) {
+        this.id = id;
+        this.userId = userId;
+        this.type = type;
+    }
+
+    @JsonIgnore
+    public boolean isDone() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    public boolean start() {
+        lock.lock();
+        try {
+            if (status != Status.QUEUED) {
+                return false;
+            }
+            status = Status.RUNNING;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean succeed(GeneratedImage image) {
+        return finish(Status.SUCCEEDED, image, null);
+    }
+
+    public boolean fail(String message) {
+        return finish(Status.FAILED, null, message);
+    }
+
+    /**
+     * Registers a callback invoked once the job reaches a terminal state.
+     * Runs immediately on the caller's thread if the job is already done.
+     */
+    public void onDone(Consumer<GenerationJob> listener) {
+        lock.lock();
+        try {
+            if (!isDone()) {
+                listeners.add(listener);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        listener.accept(this);
+    }
+
+    private boolean finish(Status terminal, GeneratedImage image, String message) {
+        lock.lock();
+        try {
+            if (isDone()) {
+                return false;
+            }
+            result = image;
+            error = message;
+            completedAt = LocalDateTime.now();
+            status = terminal;
+        } finally {
+            lock.unlock();
+        }
+        listeners.forEach(listener -> listener.accept(this));
+        listeners.clear();
+        return true;
+    }
+}
@@ -0,0 +1,13 @@
+package org.aadi.ghibli_paint.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageKeyRef {
+    private Long id;
+    private String storageKey;
+}
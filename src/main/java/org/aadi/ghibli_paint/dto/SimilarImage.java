@@ -0,0 +1,13 @@
+package org.aadi.ghibli_paint.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SimilarImage {
+    private GalleryItem image;
+    private int distance;  // differing bits out of 64; 0 is a (near-)exact copy
+}
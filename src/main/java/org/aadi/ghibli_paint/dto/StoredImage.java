@@ -0,0 +1,16 @@
+package org.aadi.ghibli_paint.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredImage {
+    private String filename;
+    private long size;
+    private String sha256;
+    private Integer width;   // null when the stored bytes are not a readable image
+    private Integer height;
+}
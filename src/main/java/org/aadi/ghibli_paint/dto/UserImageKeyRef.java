@@ -0,0 +1,14 @@
+package org.aadi.ghibli_paint.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImageKeyRef {
+    private Long id;
+    private Long userId;
+    private String storageKey;
+}
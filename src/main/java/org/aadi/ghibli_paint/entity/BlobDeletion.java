@@ -0,0 +1,37 @@
+package org.aadi.ghibli_paint.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Durable to-delete log: one row per stored blob whose gallery rows are gone. Written in the same
+ * transaction as the row deletes and drained by the blob deletion worker.
+ */
+@Entity
+@Table(name = "blob_deletions",
+        indexes = @Index(name = "idx_blob_deletions_next_attempt_id", columnList = "next_attempt_at, id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlobDeletion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "storage_key", nullable = false)
+    private String storageKey;
+
+    @Column(name = "enqueued_at", nullable = false)
+    private LocalDateTime enqueuedAt;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+}
@@ -10,14 +10,19 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "generated_images")
+@Table(name = "generated_images", indexes = {
+        @Index(name = "idx_generated_images_user_created_id", columnList = "user_id, created_at DESC, id DESC"),
+        @Index(name = "idx_generated_images_storage_key", columnList = "storage_key")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class GeneratedImage {
 
+    // Pooled sequence rather than IDENTITY so Hibernate can batch inserts; see allocationSize
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "generated_images_seq")
+    @SequenceGenerator(name = "generated_images_seq", sequenceName = "generated_images_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -37,6 +42,13 @@ public class GeneratedImage {
     @Column(name = "original_filename")
     private String originalFilename;
 
+    @Column(name = "storage_key")
+    @JsonIgnore
+    private String storageKey;  // filename under the image store
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;  // SHA-256 hex of the stored bytes
+
     @Column(name = "file_size")
     private Long fileSize;
 
@@ -49,4 +61,8 @@ public class GeneratedImage {
 
     @Column(name = "height")
     private Integer height;
+
+    @Column(name = "perceptual_hash")
+    @JsonIgnore
+    private Long perceptualHash;  // 64-bit dHash, null until the image has been fingerprinted
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package org.aadi.ghibli_paint.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "image_variants",
+        uniqueConstraints = @UniqueConstraint(name = "uk_image_variants_variant_key", columnNames = "variant_key"),
+        indexes = @Index(name = "idx_image_variants_source_key", columnList = "source_key"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageVariant {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "source_key", nullable = false)
+    private String sourceKey;  // storage key of the full-size image the variant was derived from
+
+    @Column(name = "variant_key", nullable = false)
+    private String variantKey;
+
+    @Column(name = "width", nullable = false)
+    private Integer width;
+
+    @Column(name = "height", nullable = false)
+    private Integer height;
+
+    @Column(name = "format", nullable = false)
+    private String format; // "png" or "jpg"
+
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
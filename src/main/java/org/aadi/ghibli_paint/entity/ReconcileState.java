@@ -0,0 +1,62 @@
+package org.aadi.ghibli_paint.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Persisted checkpoint of the storage reconciler: where the current pass has got to on each side
+ * and what it has found so far, so a restart resumes instead of starting over.
+ */
+@Entity
+@Table(name = "reconcile_state")
+@Data
+@NoArgsConstructor
+public class ReconcileState {
+
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+
+    @Column(name = "pass_started_at")
+    private LocalDateTime passStartedAt;  // null between passes
+
+    @Column(name = "next_pass_at")
+    private LocalDateTime nextPassAt;
+
+    @Column(name = "file_cursor", length = 1024)
+    private String fileCursor;  // store listing cursor; null = from the start
+
+    @Column(name = "files_done", nullable = false)
+    private boolean filesDone;
+
+    @Column(name = "row_cursor", nullable = false)
+    private long rowCursor;  // last generated_images id checked
+
+    @Column(name = "rows_done", nullable = false)
+    private boolean rowsDone;
+
+    @Column(name = "files_scanned", nullable = false)
+    private long filesScanned;
+
+    @Column(name = "rows_scanned", nullable = false)
+    private long rowsScanned;
+
+    @Column(name = "orphan_files", nullable = false)
+    private long orphanFiles;
+
+    @Column(name = "dangling_rows", nullable = false)
+    private long danglingRows;
+
+    @Column(name = "repairs", nullable = false)
+    private long repairs;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public ReconcileState(String name) {
+        this.name = name;
+    }
+}
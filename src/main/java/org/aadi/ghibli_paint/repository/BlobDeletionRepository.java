@@ -0,0 +1,38 @@
+package org.aadi.ghibli_paint.repository;
+
+import org.aadi.ghibli_paint.entity.BlobDeletion;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BlobDeletionRepository extends JpaRepository<BlobDeletion, Long> {
+
+    // One INSERT ... SELECT per batch; rows from before storage_key was recorded fall back to the serve URL tail
+    @Modifying
+    @Query("insert into BlobDeletion (storageKey, enqueuedAt, nextAttemptAt, attempts) " +
+            "select distinct coalesce(i.storageKey, substring(i.imageUrl, locate('/serve/', i.imageUrl) + 7)), " +
+            "local datetime, local datetime, 0 from GeneratedImage i where i.id in :imageIds")
+    int enqueueForImages(@Param("imageIds") Collection<Long> imageIds);
+
+    @Query("select d from BlobDeletion d where d.nextAttemptAt <= :now order by d.nextAttemptAt, d.id")
+    List<BlobDeletion> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("delete from BlobDeletion d where d.id in :ids")
+    void deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query("update BlobDeletion d set d.attempts = d.attempts + 1, d.nextAttemptAt = :nextAttemptAt where d.id = :id")
+    void recordFailure(@Param("id") Long id, @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+}
@@ -1,15 +1,100 @@
 package org.aadi.ghibli_paint.repository;
 
+import org.aadi.ghibli_paint.dto.GalleryItem;
+import org.aadi.ghibli_paint.dto.ImageHashRef;
+import org.aadi.ghibli_paint.dto.ImageKeyRef;
+import org.aadi.ghibli_paint.dto.UserImageKeyRef;
 import org.aadi.ghibli_paint.entity.GeneratedImage;
 import org.aadi.ghibli_paint.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface GeneratedImageRepository extends JpaRepository<GeneratedImage, Long> {
     List<GeneratedImage> findByUserOrderByCreatedAtDesc(User user);
     List<GeneratedImage> findByUserIdOrderByCreatedAtDesc(Long userId);
-    void deleteByUser(User user);
+    Optional<GeneratedImage> findByIdAndUserId(Long id, Long userId);
+
+    // Keys among the given ones that some gallery row still points at
+    @Query("select distinct i.storageKey from GeneratedImage i where i.storageKey in :storageKeys")
+    List<String> findReferencedStorageKeys(@Param("storageKeys") Collection<String> storageKeys);
+
+    // Always the first page: callers delete each batch before asking for the next. Unordered, so
+    // the scan stops after one page instead of sorting every remaining row
+    @Query("select i.id from GeneratedImage i where i.user.id = :userId")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    // Rows from before storage_key was recorded: their key is the tail of the serve URL. Not indexable,
+    // so callers only ask while such rows exist
+    @Query("select substring(i.imageUrl, locate('/serve/', i.imageUrl) + 7) from GeneratedImage i " +
+            "where i.storageKey is null and substring(i.imageUrl, locate('/serve/', i.imageUrl) + 7) in :storageKeys")
+    List<String> findLegacyReferencedKeys(@Param("storageKeys") Collection<String> storageKeys);
+
+    long countByStorageKeyIsNull();
+
+    // Keyset batches over the primary key for the storage reconciler
+    @Query("select new org.aadi.ghibli_paint.dto.ImageKeyRef(i.id, " +
+            "coalesce(i.storageKey, substring(i.imageUrl, locate('/serve/', i.imageUrl) + 7))) " +
+            "from GeneratedImage i where i.id > :afterId order by i.id")
+    List<ImageKeyRef> findKeyRefsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Rows still waiting for a perceptual hash, in keyset batches over the primary key
+    @Query("select new org.aadi.ghibli_paint.dto.UserImageKeyRef(i.id, i.user.id, " +
+            "coalesce(i.storageKey, substring(i.imageUrl, locate('/serve/', i.imageUrl) + 7))) " +
+            "from GeneratedImage i where i.perceptualHash is null and i.id > :afterId order by i.id")
+    List<UserImageKeyRef> findUnhashedAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("select new org.aadi.ghibli_paint.dto.ImageHashRef(i.id, i.perceptualHash) from GeneratedImage i " +
+            "where i.user.id = :userId and i.perceptualHash is not null")
+    List<ImageHashRef> findHashesByUserId(@Param("userId") Long userId);
+
+    @Modifying
+    @Transactional
+    @Query("update GeneratedImage i set i.perceptualHash = :hash where i.id in :ids")
+    int updatePerceptualHash(@Param("ids") Collection<Long> ids, @Param("hash") long hash);
+
+    @Query("select i.id from GeneratedImage i where i.user.id = :userId and i.id in :ids")
+    List<Long> findOwnedIds(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("delete from GeneratedImage i where i.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select max(i.contentHash) from GeneratedImage i where i.storageKey = :storageKey")
+    Optional<String> findContentHashByStorageKey(@Param("storageKey") String storageKey);
+
+    // Gallery pages walk idx_generated_images_user_created_id with a (created_at, id) keyset. user.id
+    // leads the order by, though it is fixed, because H2 only reads an index in order when the sort
+    // spells out its prefix; otherwise it sorts the whole gallery for every page
+    @Query("select new org.aadi.ghibli_paint.dto.GalleryItem(i.id, i.prompt, i.imageUrl, i.imageType, " +
+            "i.fileSize, i.width, i.height, i.createdAt, i.perceptualHash) from GeneratedImage i " +
+            "where i.user.id = :userId order by i.user.id, i.createdAt desc, i.id desc")
+    List<GalleryItem> findGalleryFirstPage(@Param("userId") Long userId, Pageable pageable);
+
+    // The redundant createdAt <= bound is what lets the index seek to the cursor; the OR alone only
+    // narrows to the user's rows and filters every one newer than the cursor, so deep pages got slower
+    @Query("select new org.aadi.ghibli_paint.dto.GalleryItem(i.id, i.prompt, i.imageUrl, i.imageType, " +
+            "i.fileSize, i.width, i.height, i.createdAt, i.perceptualHash) from GeneratedImage i " +
+            "where i.user.id = :userId and i.createdAt <= :createdAt " +
+            "and (i.createdAt < :createdAt or (i.createdAt = :createdAt and i.id < :id)) " +
+            "order by i.user.id, i.createdAt desc, i.id desc")
+    List<GalleryItem> findGalleryPageAfter(@Param("userId") Long userId,
+                                           @Param("createdAt") LocalDateTime createdAt,
+                                           @Param("id") Long id,
+                                           Pageable pageable);
+
+    @Query("select new org.aadi.ghibli_paint.dto.GalleryItem(i.id, i.prompt, i.imageUrl, i.imageType, " +
+            "i.fileSize, i.width, i.height, i.createdAt, i.perceptualHash) from GeneratedImage i " +
+            "where i.user.id = :userId and i.id in :ids")
+    List<GalleryItem> findGalleryItems(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,30 @@
+package org.aadi.ghibli_paint.repository;
+
+import org.aadi.ghibli_paint.entity.GenerationCacheEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface GenerationCacheRepository extends JpaRepository<GenerationCacheEntry, Long> {
+    Optional<GenerationCacheEntry> findByCacheKey(String cacheKey);
+    List<GenerationCacheEntry> findByCreatedAtBefore(LocalDateTime cutoff, Pageable pageable);
+    List<GenerationCacheEntry> findAllByOrderByLastHitAtAsc(Pageable pageable);
+
+    @Query("select distinct e.storageKey from GenerationCacheEntry e where e.storageKey in :storageKeys")
+    List<String> findReferencedStorageKeys(@Param("storageKeys") Collection<String> storageKeys);
+
+    @Modifying
+    @Transactional
+    @Query("update GenerationCacheEntry e set e.hitCount = e.hitCount + :hits, e.lastHitAt = :now where e.id in :ids")
+    void recordHits(@Param("ids") Collection<Long> ids, @Param("hits") long hits, @Param("now") LocalDateTime now);
+}
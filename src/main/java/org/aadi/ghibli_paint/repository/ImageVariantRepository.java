@@ -0,0 +1,32 @@
+package org.aadi.ghibli_paint.repository;
+
+import org.aadi.ghibli_paint.entity.ImageVariant;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ImageVariantRepository extends JpaRepository<ImageVariant, Long> {
+    List<ImageVariant> findBySourceKey(String sourceKey);
+
+    @Modifying
+    @Transactional
+    @Query("delete from ImageVariant v where v.sourceKey = :sourceKey")
+    void deleteBySourceKey(@Param("sourceKey") String sourceKey);
+
+    List<ImageVariant> findBySourceKeyIn(Collection<String> sourceKeys);
+
+    @Query("select v.variantKey from ImageVariant v where v.variantKey in :variantKeys")
+    List<String> findVariantKeysIn(@Param("variantKeys") Collection<String> variantKeys);
+
+    @Modifying
+    @Transactional
+    @Query("delete from ImageVariant v where v.sourceKey in :sourceKeys")
+    void deleteBySourceKeyIn(@Param("sourceKeys") Collection<String> sourceKeys);
+}
@@ -0,0 +1,9 @@
+package org.aadi.ghibli_paint.repository;
+
+import org.aadi.ghibli_paint.entity.ReconcileState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReconcileStateRepository extends JpaRepository<ReconcileState, String> {
+}
@@ -1,15 +1,38 @@
 package org.aadi.ghibli_paint.repository;
 
+import org.aadi.ghibli_paint.dto.UserHandle;
 import org.aadi.ghibli_paint.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
+
+    // Both unique columns in one round trip; may return two rows when one user's email is another's username
+    @Query("SELECT u FROM User u WHERE u.username = :login OR u.email = :login")
+    List<User> findByUsernameOrEmail(@Param("login") String login);
+
+    // Keyset batches over the primary key for warming the availability index
+    @Query("SELECT new org.aadi.ghibli_paint.dto.UserHandle(u.id, u.username, u.email) FROM User u " +
+            "WHERE u.id > :afterId ORDER BY u.id")
+    List<UserHandle> findHandlesAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Bulk delete: skips loading the user and cascading over generatedImages row by row
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM User u WHERE u.id = :id")
+    void deleteRowById(@Param("id") Long id);
+
     Boolean existsByUsername(String username);
     Boolean existsByEmail(String email);
 }
@@ -3,33 +3,45 @@ package org.aadi.ghibli_paint.security;
 import lombok.RequiredArgsConstructor;
 import org.aadi.ghibli_paint.entity.User;
 import org.aadi.ghibli_paint.repository.UserRepository;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final UserDetailsCache userDetailsCache;
 
     @Override
-    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+    public AuthenticatedUser loadUserByUsername(String username) throws UsernameNotFoundException {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+        return toPrincipal(user);
+    }
+
+    /**
+     * Resolves the principal for an authenticated request, hitting the database only when the
+     * short-TTL cache has no entry for the id.
+     */
+    public Optional<AuthenticatedUser> loadUserById(Long userId) {
+        AuthenticatedUser cached = userDetailsCache.get(userId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        // The cached principal never needs the password hash
+        Optional<AuthenticatedUser> loaded = userRepository.findById(userId)
+                .map(user -> new AuthenticatedUser(user.getId(), user.getUsername(), null,
+                        Boolean.TRUE.equals(user.getIsActive())));
+        loaded.ifPresent(userDetailsCache::put);
+        return loaded;
+    }
 
-        return new org.springframework.security.core.userdetails.User(
-                user.getUsername(),
-                user.getPassword(),
-                user.getIsActive(),
-                true,
-                true,
-                true,
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"))
-        );
+    public static AuthenticatedUser toPrincipal(User user) {
+        return new AuthenticatedUser(user.getId(), user.getUsername(), user.getPassword(),
+                Boolean.TRUE.equals(user.getIsActive()));
     }
 }
@@ -0,0 +1,62 @@
+package org.aadi.ghibli_paint.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.aadi.ghibli_paint.service.RateLimiterService;
+import org.aadi.ghibli_paint.service.RateLimiterService.Policy;
+import org.aadi.ghibli_paint.util.TokenBucket;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Admission control for the generate endpoints, applied per authenticated user after the JWT
+ * filter. Every limited response carries RateLimit-Limit/-Remaining/-Reset and RateLimit-Policy
+ * (IETF draft-ietf-httpapi-ratelimit-headers); rejections are 429 with Retry-After. A batch
+ * spends one BATCH token here; its per-prompt GENERATE charge happens in the controller once the
+ * body has been read.
+ */
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String GENERATE_PREFIX = "/api/images/generate/";
+    private static final String BATCH_PATH = "/api/images/generate/batch";
+
+    private final RateLimiterService rateLimiterService;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !rateLimiterService.isEnabled()
+                || !"POST".equals(request.getMethod())
+                || !request.getRequestURI().startsWith(GENERATE_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser user)) {
+            // Unauthenticated requests are rejected further down the chain
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Policy policy = BATCH_PATH.equals(request.getRequestURI()) ? Policy.BATCH : Policy.GENERATE;
+        TokenBucket.Decision decision = rateLimiterService.tryAcquire(user.getId(), policy);
+        rateLimiterService.headersFor(policy, decision).forEach((name, values) -> response.setHeader(name, values.get(0)));
+
+        if (!decision.allowed()) {
+            response.sendError(429, "Rate limit exceeded");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
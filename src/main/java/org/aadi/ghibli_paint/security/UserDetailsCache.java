@@ -0,0 +1,39 @@
+package org.aadi.ghibli_paint.security;
+
+import jakarta.annotation.PostConstruct;
+import org.aadi.ghibli_paint.util.LruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short-lived id -> principal cache consulted by the JWT filter. Anything that changes whether a
+ * user may authenticate (deactivation, deletion) must call {@link #invalidate(Long)}.
+ */
+@Component
+public class UserDetailsCache {
+
+    @Value("${security.user-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${security.user-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private LruCache<Long, AuthenticatedUser> users;
+
+    @PostConstruct
+    void init() {
+        users = new LruCache<>(maxEntries);
+    }
+
+    public AuthenticatedUser get(Long userId) {
+        return users.get(userId);
+    }
+
+    public void put(AuthenticatedUser user) {
+        users.put(user.getId(), user, System.currentTimeMillis() + ttlSeconds * 1000);
+    }
+
+    public void invalidate(Long userId) {
+        users.remove(userId);
+    }
+}
@@ -1,85 +1,109 @@
 // Backend: Update src/main/java/org/aadi/ghibli_paint/service/AuthService.java
 package org.aadi.ghibli_paint.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import org.aadi.ghibli_paint.dto.AuthRequest;
 import org.aadi.ghibli_paint.dto.AuthResponse;
+import org.aadi.ghibli_paint.dto.AvailabilityResponse;
 import org.aadi.ghibli_paint.dto.SignupRequest;
 import org.aadi.ghibli_paint.entity.User;
 import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.security.CustomUserDetailsService;
 import org.aadi.ghibli_paint.security.JwtUtil;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.aadi.ghibli_paint.security.PasswordHashingService;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class AuthService {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final JwtUtil jwtUtil;
-    private final AuthenticationManager authenticationManager;
-    private final UserDetailsService userDetailsService;
+    private final MeterRegistry meterRegistry;
+    private final AvailabilityIndexService availabilityIndexService;
 
     public AuthResponse signup(SignupRequest request) {
-        if (userRepository.existsByUsername(request.getUsername())) {
+        if (availabilityIndexService.isUsernameTaken(request.getUsername())) {
             throw new RuntimeException("Username already exists");
         }
 
-        if (userRepository.existsByEmail(request.getEmail())) {
+        if (availabilityIndexService.isEmailTaken(request.getEmail())) {
             throw new RuntimeException("Email already exists");
         }
 
         User user = new User();
         user.setUsername(request.getUsername());
         user.setEmail(request.getEmail());
-        user.setPassword(passwordEncoder.encode(request.getPassword()));
+        user.setPassword(passwordHashingService.encode(request.getPassword()));
         user.setFullName(request.getFullName());
         user.setIsActive(true);
 
         User savedUser = userRepository.save(user);
+        availabilityIndexService.add(savedUser.getUsername(), savedUser.getEmail());
+        return toResponse(savedUser);
+    }
 
-        UserDetails userDetails = userDetailsService.loadUserByUsername(savedUser.getUsername());
-        String token = jwtUtil.generateToken(userDetails);
-
-        return AuthResponse.builder()
-                .token(token)
-                .username(savedUser.getUsername())
-                .email(savedUser.getEmail())
-                .fullName(savedUser.getFullName())
-                .userId(savedUser.getId())
-                .build();
+    public AvailabilityResponse availability(String username, String email) {
+        return new AvailabilityResponse(
+                username == null ? null : !availabilityIndexService.isUsernameTaken(username),
+                email == null ? null : !availabilityIndexService.isEmailTaken(email));
     }
 
+    /**
+     * Resolves username-or-email in a single query and checks the password on the hashing pool;
+     * the token is built from the row already in hand rather than reloading the user.
+     */
     public AuthResponse login(AuthRequest request) {
-        String input = request.getUsername();
-        Optional<User> userOpt = userRepository.findByUsername(input);
-
-        // If not found by username, try email
-        if (userOpt.isEmpty()) {
-            userOpt = userRepository.findByEmail(input);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            AuthResponse response = authenticate(request);
+            outcome = "success";
+            return response;
+        } catch (UsernameNotFoundException | BadCredentialsException | DisabledException e) {
+            outcome = "rejected";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("auth.login")
+                    .tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry));
         }
+    }
 
-        if (userOpt.isEmpty()) {
+    private AuthResponse authenticate(AuthRequest request) {
+        String input = request.getUsername();
+        List<User> candidates = userRepository.findByUsernameOrEmail(input);
+
+        // A username match wins over another account whose email happens to equal the input
+        User user = candidates.stream()
+                .filter(candidate -> candidate.getUsername().equals(input))
+                .findFirst()
+                .orElseGet(() -> candidates.isEmpty() ? null : candidates.get(0));
+        if (user == null) {
             throw new UsernameNotFoundException("User not found with provided credentials");
         }
 
-        User user = userOpt.get();
+        if (!passwordHashingService.matches(request.getPassword(), user.getPassword())) {
+            throw new BadCredentialsException("Bad credentials");
+        }
+        if (!Boolean.TRUE.equals(user.getIsActive())) {
+            throw new DisabledException("User account is disabled");
+        }
 
-        // Authenticate using the actual username and provided password
-        authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(user.getUsername(), request.getPassword())
-        );
+        return toResponse(user);
+    }
 
-        UserDetails userDetails = userDetailsService.loadUserByUsername(user.getUsername());
-        String token = jwtUtil.generateToken(userDetails);
+    private AuthResponse toResponse(User user) {
+        String token = jwtUtil.generateToken(CustomUserDetailsService.toPrincipal(user));
 
         return AuthResponse.builder()
                 .token(token)
@@ -89,4 +113,4 @@ public class AuthService {
                 .userId(user.getId())
                 .build();
     }
-}
\ No newline at end of file
+}
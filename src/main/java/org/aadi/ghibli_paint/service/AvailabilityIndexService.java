@@ -0,0 +1,189 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.dto.UserHandle;
+import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.util.BloomFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory Bloom filters over every username and email, so availability checks for names that
+ * were never taken skip the database. A negative answer is definitive; a positive one (taken, or
+ * a false positive) falls through to {@link UserRepository}. Deleted accounts cannot be removed
+ * from the filters, only counted; the filters are rebuilt once they grow past capacity or
+ * accumulate too many stale entries. Until the first build finishes every check goes to the DB.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AvailabilityIndexService {
+
+    @Value("${auth.availability.enabled:true}")
+    private boolean enabled;
+
+    @Value("${auth.availability.expected-users:1000000}")
+    private long expectedUsers;
+
+    @Value("${auth.availability.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${auth.availability.warm-batch-size:5000}")
+    private int warmBatchSize;
+
+    @Value("${auth.availability.max-stale-fraction:0.1}")
+    private double maxStaleFraction;
+
+    private final UserRepository userRepository;
+    private final MeterRegistry meterRegistry;
+
+    private record Filters(BloomFilter usernames, BloomFilter emails) {
+    }
+
+    private volatile Filters current;
+    private volatile Filters building;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final AtomicLong staleEntries = new AtomicLong();
+
+    private Counter definitelyFree;
+    private Counter falsePositives;
+    private Counter confirmedTaken;
+
+    @PostConstruct
+    void init() {
+        definitelyFree = Counter.builder("auth.availability.checks").tag("result", "filter_negative").register(meterRegistry);
+        falsePositives = Counter.builder("auth.availability.checks").tag("result", "false_positive").register(meterRegistry);
+        confirmedTaken = Counter.builder("auth.availability.checks").tag("result", "taken").register(meterRegistry);
+        Gauge.builder("auth.availability.entries", this, index -> index.current == null ? 0 : index.current.usernames().insertions())
+                .register(meterRegistry);
+        Gauge.builder("auth.availability.memory.bytes", this, index -> index.current == null ? 0
+                        : index.current.usernames().sizeInBytes() + index.current.emails().sizeInBytes())
+                .register(meterRegistry);
+        Gauge.builder("auth.availability.expected.fpp", this, index -> index.current == null ? 1
+                        : index.current.usernames().expectedFalsePositiveRate())
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        if (enabled) {
+            Thread thread = new Thread(this::rebuild, "availability-index-warmer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public boolean isUsernameTaken(String username) {
+        Filters filters = current;
+        if (filters != null && !filters.usernames().mightContain(username)) {
+            definitelyFree.increment();
+            return false;
+        }
+        return confirm(userRepository.existsByUsername(username), filters);
+    }
+
+    public boolean isEmailTaken(String email) {
+        Filters filters = current;
+        if (filters != null && !filters.emails().mightContain(email)) {
+            definitelyFree.increment();
+            return false;
+        }
+        return confirm(userRepository.existsByEmail(email), filters);
+    }
+
+    /**
+     * Called after a user row is committed. Writes to the live filters and, during a rebuild,
+     * to the ones being built so the swap cannot lose the new entry.
+     */
+    public void add(String username, String email) {
+        Filters filters = current;
+        if (filters != null) {
+            filters.usernames().add(username);
+            filters.emails().add(email);
+        }
+        Filters next = building;
+        if (next != null) {
+            next.usernames().add(username);
+            next.emails().add(email);
+        }
+    }
+
+    public void remove(String username, String email) {
+        // Bits stay set; the DB fallback answers correctly until the next rebuild drops them
+        staleEntries.incrementAndGet();
+    }
+
+    @Scheduled(fixedDelayString = "${auth.availability.check-interval-ms:600000}")
+    public void rebuildIfDegraded() {
+        Filters filters = current;
+        if (!enabled || filters == null) {
+            return;
+        }
+        long entries = filters.usernames().insertions();
+        if (entries > expectedUsers || staleEntries.get() > entries * maxStaleFraction) {
+            rebuild();
+        }
+    }
+
+    void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            long staleAtStart = staleEntries.get();
+            long capacity = Math.max(expectedUsers, userRepository.count() * 2);
+            Filters next = new Filters(new BloomFilter(capacity, falsePositiveRate),
+                    new BloomFilter(capacity, falsePositiveRate));
+            // Publish before scanning: rows committed from here on are either scanned or added directly
+            building = next;
+
+            long afterId = 0;
+            List<UserHandle> batch;
+            do {
+                batch = userRepository.findHandlesAfter(afterId, PageRequest.of(0, warmBatchSize));
+                for (UserHandle handle : batch) {
+                    next.usernames().add(handle.getUsername());
+                    next.emails().add(handle.getEmail());
+                    afterId = handle.getId();
+                }
+            } while (batch.size() == warmBatchSize);
+
+            if (capacity > expectedUsers) {
+                expectedUsers = capacity;
+            }
+            current = next;
+            staleEntries.addAndGet(-staleAtStart);
+            log.info("Availability index built: {} users, {} KB, expected false-positive rate {} in {} ms",
+                    next.usernames().insertions(),
+                    (next.usernames().sizeInBytes() + next.emails().sizeInBytes()) / 1024,
+                    String.format("%.4f", next.usernames().expectedFalsePositiveRate()),
+                    System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("Availability index build failed; checks keep using the database", e);
+        } finally {
+            building = null;
+            rebuilding.set(false);
+        }
+    }
+
+    private boolean confirm(boolean taken, Filters filters) {
+        if (filters != null) {
+            (taken ? confirmedTaken : falsePositives).increment();
+        }
+        return taken;
+    }
+}
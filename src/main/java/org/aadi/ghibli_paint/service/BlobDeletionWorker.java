@@ -0,0 +1,130 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.entity.BlobDeletion;
+import org.aadi.ghibli_paint.repository.BlobDeletionRepository;
+import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
+import org.aadi.ghibli_paint.util.LogSampler;
+import org.aadi.ghibli_paint.util.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the blob_deletions log at a bounded rate. A blob (with its derivatives) is only removed
+ * once no gallery row or cache entry points at it any more, since cached generations share blobs
+ * across users; failures stay in the log and are retried with exponential backoff. Entries are
+ * removed only after the blob is gone, so a crash mid-pass just repeats some idempotent deletes.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BlobDeletionWorker {
+
+    @Value("${app.deletion.worker.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.deletion.worker.rate-per-second:200}")
+    private int ratePerSecond;
+
+    @Value("${app.deletion.worker.retry-backoff-seconds:30}")
+    private long retryBackoffSeconds;
+
+    @Value("${app.deletion.worker.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    @Value("${app.logging.sample-rate:0.01}")
+    private double logSampleRate;
+
+    private final BlobDeletionRepository blobDeletionRepository;
+    private final GeneratedImageRepository generatedImageRepository;
+    private final GenerationCacheService generationCacheService;
+    private final ImageStorageService imageStorageService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final MeterRegistry meterRegistry;
+
+    private TokenBucket limiter;
+    private LogSampler logSampler;
+    private Counter deleted;
+    private Counter retained;
+    private Counter failed;
+
+    @PostConstruct
+    void init() {
+        limiter = new TokenBucket(ratePerSecond, TimeUnit.SECONDS.toNanos(1) / ratePerSecond, System.nanoTime());
+        logSampler = new LogSampler(logSampleRate);
+        deleted = Counter.builder("image.deletion.blobs").tag("result", "deleted").register(meterRegistry);
+        retained = Counter.builder("image.deletion.blobs").tag("result", "still_referenced").register(meterRegistry);
+        failed = Counter.builder("image.deletion.blobs").tag("result", "failed").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.deletion.worker.interval-ms:5000}")
+    public void drain() throws InterruptedException {
+        List<BlobDeletion> due;
+        do {
+            due = blobDeletionRepository.findDue(LocalDateTime.now(), PageRequest.of(0, batchSize));
+            if (due.isEmpty()) {
+                return;
+            }
+            Set<String> keys = new HashSet<>();
+            due.forEach(entry -> keys.add(entry.getStorageKey()));
+            // A few set-based lookups per batch instead of several queries per blob
+            Set<String> referenced = new HashSet<>(generatedImageRepository.findReferencedStorageKeys(keys));
+            referenced.addAll(generationCacheService.referencedAmong(keys));
+            keys.removeAll(referenced);
+            Map<String, List<String>> variants = imageDerivativeService.variantKeysOf(keys);
+
+            List<Long> done = new ArrayList<>();
+            Set<String> purged = new HashSet<>();
+            for (BlobDeletion entry : due) {
+                String key = entry.getStorageKey();
+                if (referenced.contains(key)) {
+                    retained.increment();
+                    done.add(entry.getId());
+                    continue;
+                }
+                if (purged.contains(key)) {
+                    done.add(entry.getId());
+                    continue;
+                }
+                limiter.acquire();
+                try {
+                    for (String variantKey : variants.getOrDefault(key, List.of())) {
+                        imageStorageService.purge(variantKey);
+                    }
+                    imageStorageService.purge(key);
+                    deleted.increment();
+                    purged.add(key);
+                    done.add(entry.getId());
+                } catch (IOException | RuntimeException e) {
+                    failed.increment();
+                    long backoff = Math.min(maxBackoffSeconds, retryBackoffSeconds << Math.min(entry.getAttempts(), 16));
+                    blobDeletionRepository.recordFailure(entry.getId(), LocalDateTime.now().plusSeconds(backoff));
+                    if (logSampler.sample()) {
+                        log.warn("event=blob_delete_failed file={} attempts={} error={}",
+                                key, entry.getAttempts() + 1, e.toString());
+                    }
+                }
+            }
+            // Variant rows go before the log entries, so a crash in between only repeats idempotent deletes
+            imageDerivativeService.forgetVariants(purged);
+            if (!done.isEmpty()) {
+                blobDeletionRepository.deleteByIdIn(done);
+            }
+        } while (due.size() == batchSize);
+    }
+}
@@ -0,0 +1,154 @@
+package org.aadi.ghibli_paint.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Writes stored images to the servlet response with single-range support. Local files go out
+ * through Tomcat's sendfile when the connector offers it, otherwise through
+ * {@link FileChannel#transferTo}, so image bytes are never staged in heap buffers by our code;
+ * objects in a remote store are copied through from a ranged read.
+ */
+@Service
+@RequiredArgsConstructor
+public class FileTransferService {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private record ByteRange(long start, long end) {  // end is exclusive
+
+        long length() {
+            return end - start;
+        }
+    }
+
+    private final ImageStorageService imageStorageService;
+
+    /**
+     * Returns the number of body bytes sent (or handed to sendfile); zero for HEAD and 416.
+     */
+    public long transfer(HttpServletRequest request, HttpServletResponse response, String filename,
+                         ImageStore.Stat stat, MediaType contentType, String etag, String contentDisposition)
+            throws IOException {
+        long length = stat.size();
+        long lastModified = stat.lastModified().toEpochMilli();
+
+        response.setContentType(contentType.toString());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        if (etag != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+        }
+        if (contentDisposition != null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        }
+
+        ByteRange range = new ByteRange(0, length);
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && ifRangeMatches(request, etag, lastModified)) {
+            ByteRange requested = parseRange(rangeHeader, length);
+            if (requested == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return 0;
+            }
+            if (requested.length() < length) {
+                range = requested;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE,
+                        "bytes " + range.start() + "-" + (range.end() - 1) + "/" + length);
+            }
+        }
+        response.setContentLengthLong(range.length());
+
+        if ("HEAD".equals(request.getMethod()) || range.length() == 0) {
+            return 0;
+        }
+        Optional<Path> file = imageStorageService.localPath(filename);
+        if (file.isEmpty()) {
+            try (InputStream in = imageStorageService.openRange(filename, range.start(), range.length())) {
+                in.transferTo(response.getOutputStream());
+            }
+            return range.length();
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.get().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, range.start());
+            request.setAttribute(SENDFILE_END, range.end());
+            return range.length();
+        }
+        try (FileChannel channel = FileChannel.open(file.get(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = range.start();
+            while (position < range.end()) {
+                position += channel.transferTo(position, range.end() - position, out);
+            }
+        }
+        return range.length();
+    }
+
+    /**
+     * If-Range only keeps the Range in play when the validator still matches; otherwise the
+     * client's partial copy is stale and the full body must be sent.
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Weak validators never match for ranges
+            return etag != null && !ifRange.startsWith("W/") && ifRange.equals(etag);
+        }
+        try {
+            long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return date >= 0 && lastModified / 1000 == date / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a single "bytes=" range. Multi-range requests are answered with the full body,
+     * which RFC 9110 allows. Returns null when the range cannot be satisfied.
+     */
+    private ByteRange parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.contains(",")) {
+            return new ByteRange(0, length);
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new ByteRange(0, length);
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                return suffix <= 0 || length == 0 ? null : new ByteRange(Math.max(0, length - suffix), length);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? length : Math.min(Long.parseLong(last) + 1, length);
+            return start >= length || end <= start ? null : new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return new ByteRange(0, length);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.aadi.ghibli_paint.dto.GalleryItem;
+import org.aadi.ghibli_paint.dto.GalleryPage;
+import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class GalleryService {
+
+    public static final int DEFAULT_PAGE_SIZE = 30;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private final GeneratedImageRepository generatedImageRepository;
+    private final UserService userService;
+    private final SimilarImageService similarImageService;
+    private final MeterRegistry meterRegistry;
+
+    private Timer firstPageQueries;
+    private Timer nextPageQueries;
+
+    @PostConstruct
+    void init() {
+        firstPageQueries = Timer.builder("gallery.query").tag("page", "first").register(meterRegistry);
+        nextPageQueries = Timer.builder("gallery.query").tag("page", "next").register(meterRegistry);
+    }
+
+    /**
+     * Returns one page of the current user's gallery, newest first. The cursor encodes the
+     * (created_at, id) of the last item, so deep pages cost the same as the first one. With
+     * {@code hideSimilar}, near-duplicates of newer items on the page are left out, so a page can
+     * come back shorter than the limit.
+     */
+    @Transactional(readOnly = true)
+    public GalleryPage getPage(Integer limit, String after, boolean hideSimilar) {
+        Long userId = userService.getCurrentUserId();
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // Fetch one extra row to know whether another page exists
+        PageRequest window = PageRequest.of(0, pageSize + 1);
+
+        List<GalleryItem> items;
+        if (after == null || after.isBlank()) {
+            items = firstPageQueries.record(() -> generatedImageRepository.findGalleryFirstPage(userId, window));
+        } else {
+            Cursor cursor = Cursor.decode(after);
+            items = nextPageQueries.record(() ->
+                    generatedImageRepository.findGalleryPageAfter(userId, cursor.createdAt(), cursor.id(), window));
+        }
+
+        String nextCursor = null;
+        if (items.size() > pageSize) {
+            items = items.subList(0, pageSize);
+            GalleryItem last = items.get(pageSize - 1);
+            nextCursor = new Cursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new GalleryPage(hideSimilar ? similarImageService.withoutNearDuplicates(items) : items, nextCursor);
+    }
+
+    record Cursor(LocalDateTime createdAt, Long id) {
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid gallery cursor", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.dto.StoredImage;
+import org.aadi.ghibli_paint.entity.BlobDeletion;
+import org.aadi.ghibli_paint.entity.GenerationCacheEntry;
+import org.aadi.ghibli_paint.repository.BlobDeletionRepository;
+import org.aadi.ghibli_paint.repository.GenerationCacheRepository;
+import org.aadi.ghibli_paint.util.LruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Result cache for deterministic generations. The prompt, every upstream parameter and the input
+ * image digest are hashed into a key; a hit reuses the stored blob instead of calling Stability AI.
+ * A bounded in-memory index sits in front of the generation_cache table. Entries in it are trusted
+ * as they are, and hits are counted in memory and written out periodically, so a hot hit costs no
+ * database or store round trip.
+ *
+ * <p>Evicted entries never delete their blob directly: a lookup may have just taken the entry and
+ * be about to insert a gallery row sharing it. The blob goes to the blob_deletions log instead,
+ * due only after a grace period, and the deletion worker removes it if nothing references it by then.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GenerationCacheService {
+
+    private static final int EVICTION_BATCH = 500;
+    private static final int HIT_FLUSH_BATCH = 1000;
+
+    @Value("${generation.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${generation.cache.memory-entries:10000}")
+    private int memoryEntries;
+
+    @Value("${generation.cache.max-entries:100000}")
+    private long maxEntries;
+
+    @Value("${generation.cache.max-age-days:30}")
+    private long maxAgeDays;
+
+    @Value("${generation.cache.eviction-grace-seconds:600}")
+    private long evictionGraceSeconds;
+
+    private final GenerationCacheRepository generationCacheRepository;
+    private final BlobDeletionRepository blobDeletionRepository;
+    private final ImageStorageService imageStorageService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    // Hits per entry id since the last flush
+    private final Map<Long, LongAdder> pendingHits = new ConcurrentHashMap<>();
+    // Serialises flushes; a lock rather than synchronized, which would pin a virtual thread's
+    // carrier for the whole database round trip
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private LruCache<String, GenerationCacheEntry> index;
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    void init() {
+        index = new LruCache<>(memoryEntries);
+        hits = Counter.builder("generation.cache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("generation.cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("generation.cache.memory.entries", index, LruCache::size).register(meterRegistry);
+    }
+
+    public String cacheKey(String endpoint, SortedMap<String, String> parameters) {
+        StringBuilder canonical = new StringBuilder(endpoint);
+        parameters.forEach((name, value) -> canonical.append('\n').append(name).append('=').append(value));
+        return sha256Hex(canonical.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Optional<GenerationCacheEntry> lookup(String cacheKey) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        GenerationCacheEntry entry = index.get(cacheKey);
+        if (entry == null) {
+            entry = generationCacheRepository.findByCacheKey(cacheKey).orElse(null);
+            // Checked once on the way into memory: a blob that vanished from the store is a miss.
+            // Resident entries are not re-checked, since only eviction hands their blob to the deletion log
+            if (entry != null && !imageStorageService.exists(entry.getStorageKey())) {
+                evict(List.of(entry));
+                entry = null;
+            }
+            if (entry != null) {
+                index.put(cacheKey, entry);
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        pendingHits.computeIfAbsent(entry.getId(), id -> new LongAdder()).increment();
+        hits.increment();
+        return Optional.of(entry);
+    }
+
+    public void record(String cacheKey, StoredImage stored) {
+        if (!enabled) {
+            return;
+        }
+        GenerationCacheEntry entry = new GenerationCacheEntry();
+        entry.setCacheKey(cacheKey);
+        entry.setStorageKey(stored.getFilename());
+        entry.setContentHash(stored.getSha256());
+        entry.setFileSize(stored.getSize());
+        entry.setWidth(stored.getWidth());
+        entry.setHeight(stored.getHeight());
+        entry.setLastHitAt(LocalDateTime.now());
+        try {
+            index.put(cacheKey, generationCacheRepository.save(entry));
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent miss for the same key got there first; its blob stays the canonical one
+            log.debug("Cache entry for key {} already recorded", cacheKey);
+        }
+    }
+
+    public List<String> referencedAmong(Collection<String> storageKeys) {
+        return generationCacheRepository.findReferencedStorageKeys(storageKeys);
+    }
+
+    /**
+     * Writes the counted hits out with one UPDATE per distinct hit count (most entries share a
+     * count of 1) instead of one per hit; {@code last_hit_at} becomes the flush time. A hit that
+     * races the flush of its entry may go uncounted, which only skews the statistic.
+     */
+    @Scheduled(fixedDelayString = "${generation.cache.hit-flush-interval-ms:60000}")
+    @PreDestroy
+    public void flushHits() {
+        flushLock.lock();
+        try {
+            if (pendingHits.isEmpty()) {
+                return;
+            }
+            Map<Long, List<Long>> idsByCount = pendingHits.keySet().stream()
+                    .collect(Collectors.groupingBy(id -> pendingHits.remove(id).sum()));
+            LocalDateTime now = LocalDateTime.now();
+            transactionTemplate.executeWithoutResult(status -> idsByCount.forEach((count, ids) -> {
+                for (int from = 0; from < ids.size(); from += HIT_FLUSH_BATCH) {
+                    List<Long> batch = ids.subList(from, Math.min(from + HIT_FLUSH_BATCH, ids.size()));
+                    generationCacheRepository.recordHits(batch, count, now);
+                }
+            }));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${generation.cache.eviction-interval-ms:3600000}")
+    public void evictExpired() {
+        // Coldest-first eviction goes by last_hit_at, so bring it up to date first
+        flushHits();
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(maxAgeDays);
+        List<GenerationCacheEntry> expired;
+        do {
+            expired = generationCacheRepository.findByCreatedAtBefore(cutoff, PageRequest.of(0, EVICTION_BATCH));
+            evict(expired);
+        } while (expired.size() == EVICTION_BATCH);
+
+        long overflow = generationCacheRepository.count() - maxEntries;
+        while (overflow > 0) {
+            int batch = (int) Math.min(overflow, EVICTION_BATCH);
+            List<GenerationCacheEntry> coldest =
+                    generationCacheRepository.findAllByOrderByLastHitAtAsc(PageRequest.of(0, batch));
+            if (coldest.isEmpty()) {
+                break;
+            }
+            evict(coldest);
+            overflow -= coldest.size();
+        }
+    }
+
+    private void evict(List<GenerationCacheEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        entries.forEach(entry -> index.remove(entry.getCacheKey()));
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime due = now.plusSeconds(evictionGraceSeconds);
+        // Enqueued in the same transaction as the delete, so a crash cannot drop the entry and leak the blob
+        transactionTemplate.executeWithoutResult(status -> {
+            blobDeletionRepository.saveAll(entries.stream()
+                    .map(entry -> new BlobDeletion(null, entry.getStorageKey(), now, due, 0))
+                    .toList());
+            generationCacheRepository.deleteAllInBatch(entries);
+        });
+    }
+
+    public static String sha256Hex(byte[] bytes) {
+        return HexFormat.of().formatHex(sha256().digest(bytes));
+    }
+
+    public static String sha256Hex(InputStream in) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
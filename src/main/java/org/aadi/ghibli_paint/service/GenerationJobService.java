@@ -0,0 +1,238 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.dto.GenerationJob;
+import org.aadi.ghibli_paint.entity.GeneratedImage;
+import org.aadi.ghibli_paint.entity.User;
+import org.aadi.ghibli_paint.util.LogSampler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Stability AI generations on a bounded worker pool so request threads return immediately.
+ * Submissions beyond the queue capacity are rejected with {@link RejectedExecutionException}.
+ * With virtual threads enabled each job gets its own virtual thread instead, still capped at
+ * workers + queue-capacity jobs in flight; upstream concurrency is bounded in {@link StabilityAIService}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GenerationJobService {
+
+    @Value("${generation.jobs.workers:8}")
+    private int workers;
+
+    @Value("${generation.jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${generation.jobs.timeout-seconds:120}")
+    private long timeoutSeconds;
+
+    @Value("${generation.jobs.retention-minutes:30}")
+    private long retentionMinutes;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${app.logging.sample-rate:0.01}")
+    private double logSampleRate;
+
+    private final StabilityAIService stabilityAIService;
+    private final UserService userService;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, GenerationJob> jobs = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+    private Semaphore admissions;  // virtual-thread mode only; the pool's queue bounds platform mode
+    private ScheduledExecutorService watchdog;
+    private LogSampler logSampler;
+
+    @PostConstruct
+    void start() {
+        if (virtualThreads) {
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("generation-vt-", 1).factory());
+            admissions = new Semaphore(workers + queueCapacity);
+        } else {
+            AtomicInteger workerCount = new AtomicInteger();
+            executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> new Thread(runnable, "generation-worker-" + workerCount.incrementAndGet()),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "generation-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.scheduleAtFixedRate(this::evictFinishedJobs, 1, 1, TimeUnit.MINUTES);
+
+        logSampler = new LogSampler(logSampleRate);
+        Gauge.builder("generation.in.flight", this, GenerationJobService::inFlight)
+                .tag("mode", "jobs")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        watchdog.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    public GenerationJob submitTextToImage(String prompt) {
+        User currentUser = userService.getCurrentUserReference();
+        return submit(currentUser, "text-to-image",
+                () -> stabilityAIService.generateImageFromText(currentUser, prompt));
+    }
+
+    public GenerationJob submitImageToImage(String prompt, MultipartFile imageFile) throws IOException {
+        User currentUser = userService.getCurrentUserReference();
+        // The multipart temp file is gone once the request completes, so keep the bytes for the worker
+        String originalFilename = imageFile.getOriginalFilename();
+        Resource image = new ByteArrayResource(imageFile.getBytes()) {
+            @Override
+            public String getFilename() {
+                return originalFilename;
+            }
+        };
+        return submit(currentUser, "image-to-image",
+                () -> stabilityAIService.generateImageFromImage(currentUser, prompt, image));
+    }
+
+    public Optional<GenerationJob> getJob(String jobId) {
+        Long currentUserId = userService.getCurrentUserId();
+        return Optional.ofNullable(jobs.get(jobId))
+                .filter(job -> job.getUserId().equals(currentUserId));
+    }
+
+    public SseEmitter subscribe(GenerationJob job) {
+        SseEmitter emitter = new SseEmitter(TimeUnit.SECONDS.toMillis(timeoutSeconds) + 5_000);
+        try {
+            emitter.send(SseEmitter.event().name("status").data(job));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            return emitter;
+        }
+        job.onDone(done -> {
+            try {
+                emitter.send(SseEmitter.event().name("status").data(done));
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+        });
+        return emitter;
+    }
+
+    private GenerationJob submit(User user, String type, Callable<GeneratedImage> task) {
+        GenerationJob job = new GenerationJob(UUID.randomUUID().toString(), user.getId(), type);
+        jobs.put(job.getId(), job);
+
+        Runnable release = admit(job, type);
+        Future<?> future;
+        try {
+            future = executor.submit(() -> {
+                try {
+                    run(job, task);
+                } finally {
+                    release.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            release.run();
+            if (logSampler.sample()) {
+                log.warn("event=generation_rejected reason=queue_full type={}", type);
+            }
+            throw e;
+        }
+
+        watchdog.schedule(() -> {
+            if (job.fail("Generation timed out after " + timeoutSeconds + "s")) {
+                future.cancel(true);
+                // A task cancelled before it started never reaches its finally block
+                release.run();
+            }
+        }, timeoutSeconds, TimeUnit.SECONDS);
+        return job;
+    }
+
+    /**
+     * Takes an in-flight slot in virtual-thread mode and returns an idempotent release for it.
+     */
+    private Runnable admit(GenerationJob job, String type) {
+        if (admissions == null) {
+            return () -> { };
+        }
+        if (!admissions.tryAcquire()) {
+            jobs.remove(job.getId());
+            if (logSampler.sample()) {
+                log.warn("event=generation_rejected reason=in_flight_limit limit={} type={}",
+                        workers + queueCapacity, type);
+            }
+            throw new RejectedExecutionException("Too many generation jobs in flight");
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                admissions.release();
+            }
+        };
+    }
+
+    private void run(GenerationJob job, Callable<GeneratedImage> task) {
+        if (!job.start()) {
+            return;
+        }
+        try {
+            job.succeed(task.call());
+        } catch (Exception e) {
+            log.error("Generation job {} failed: {}", job.getId(), e.getMessage());
+            job.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Jobs queued or running: taken slots in virtual-thread mode, otherwise the pool's own counts.
+     */
+    private int inFlight() {
+        if (admissions != null) {
+            return workers + queueCapacity - admissions.availablePermits();
+        }
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        return pool.getActiveCount() + pool.getQueue().size();
+    }
+
+    private void evictFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> job.isDone() && job.getCompletedAt().isBefore(cutoff));
+    }
+}
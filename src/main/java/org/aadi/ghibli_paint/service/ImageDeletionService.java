@@ -0,0 +1,104 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.aadi.ghibli_paint.repository.BlobDeletionRepository;
+import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Set-based deletion of gallery rows. Each batch is one transaction of three statements: select
+ * the ids, copy their storage keys into the blob_deletions log, and delete the rows. Blob removal
+ * is left to {@link BlobDeletionWorker}, so the request never waits on the image store. Each
+ * committed batch is announced as an {@link ImagesDeleted} event, so in-memory views of the
+ * gallery (the similarity indexes) can drop the rows.
+ */
+@Service
+@RequiredArgsConstructor
+public class ImageDeletionService {
+
+    /**
+     * Some of the user's images were deleted; {@code userId} is null when the rows may have had
+     * several owners.
+     */
+    public record ImagesDeleted(Long userId) {
+    }
+
+    @Value("${app.deletion.batch-size:1000}")
+    private int batchSize;
+
+    private final GeneratedImageRepository generatedImageRepository;
+    private final BlobDeletionRepository blobDeletionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    private Timer batchTimer;
+
+    @PostConstruct
+    void init() {
+        batchTimer = Timer.builder("image.deletion.batch").register(meterRegistry);
+    }
+
+    /**
+     * Deletes every gallery row of the user and returns how many were removed.
+     */
+    public long deleteAllForUser(Long userId) {
+        long deleted = 0;
+        List<Long> ids;
+        do {
+            ids = generatedImageRepository.findIdsByUserId(userId, PageRequest.of(0, batchSize));
+            deleted += deleteBatch(userId, ids);
+        } while (ids.size() == batchSize);
+        return deleted;
+    }
+
+    /**
+     * Deletes those of {@code imageIds} that belong to the user; ids of other users' images, or of
+     * images already gone, are skipped. Returns how many were removed.
+     */
+    public int deleteOwned(Long userId, Collection<Long> imageIds) {
+        return deleteInChunks(userId, imageIds, chunk -> generatedImageRepository.findOwnedIds(userId, chunk));
+    }
+
+    /**
+     * Deletes the given rows whoever owns them, e.g. rows whose file has gone missing.
+     */
+    public int deleteAll(Collection<Long> imageIds) {
+        return deleteInChunks(null, imageIds, chunk -> chunk);
+    }
+
+    private int deleteInChunks(Long userId, Collection<Long> imageIds, UnaryOperator<List<Long>> selector) {
+        List<Long> remaining = new ArrayList<>(imageIds);
+        int deleted = 0;
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            List<Long> chunk = remaining.subList(from, Math.min(from + batchSize, remaining.size()));
+            deleted += deleteBatch(userId, selector.apply(chunk));
+        }
+        return deleted;
+    }
+
+    private int deleteBatch(Long userId, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        int deleted = batchTimer.record(() -> transactionTemplate.execute(status -> {
+            blobDeletionRepository.enqueueForImages(ids);
+            return generatedImageRepository.deleteByIdIn(ids);
+        }));
+        // After the commit, so anything reloaded in response no longer sees the rows
+        eventPublisher.publishEvent(new ImagesDeleted(userId));
+        return deleted;
+    }
+}
@@ -0,0 +1,312 @@
+package org.aadi.ghibli_paint.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.entity.ImageVariant;
+import org.aadi.ghibli_paint.repository.ImageVariantRepository;
+import org.aadi.ghibli_paint.util.LruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Produces downscaled gallery variants of stored images: a PNG and a compact JPEG per configured
+ * width. Work runs on a small bounded pool (each resize holds one decoded full-size image, ~4 MB
+ * for 1024x1024 ARGB), and concurrent requests for the same source share a single in-flight job.
+ * Serving never waits for one: a missing variant is queued and the original served meanwhile.
+ * Source widths and failed decodes are remembered, so requests for variants that cannot exist
+ * do not decode the source again.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImageDerivativeService {
+
+    private static final int FAILED = -1;
+
+    @Value("${app.derivatives.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.derivatives.widths:128,256,512}")
+    private int[] widths;
+
+    @Value("${app.derivatives.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    @Value("${app.derivatives.workers:2}")
+    private int workers;
+
+    @Value("${app.derivatives.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${app.derivatives.known-sources:10000}")
+    private int knownSources;
+
+    @Value("${app.derivatives.failure-retry-seconds:3600}")
+    private long failureRetrySeconds;
+
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantRepository imageVariantRepository;
+
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    // Decoded width per source key; FAILED (for a limited time) when the source could not be decoded
+    private LruCache<String, Integer> sourceWidths;
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void start() {
+        Arrays.sort(widths);
+        sourceWidths = new LruCache<>(knownSources);
+        AtomicInteger workerCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "derivative-worker-" + workerCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues variant generation for a freshly stored image. When the pool is saturated the work is
+     * dropped; the first request for a variant queues it again.
+     */
+    public void scheduleDerivatives(String sourceKey) {
+        if (enabled) {
+            ensureDerivatives(sourceKey);
+        }
+    }
+
+    /**
+     * Picks the stored variant closest to (and not narrower than) the requested width. Returns empty
+     * when the original should be served: the request is at least as wide as the largest variant or
+     * the source itself, the source cannot be decoded, derivatives are disabled, or the variant has
+     * not been generated yet (it is then queued, and this call does not wait for it).
+     */
+    public Optional<String> variantFor(String sourceKey, int requestedWidth, boolean compact) {
+        if (!enabled || isVariant(sourceKey)) {
+            return Optional.empty();
+        }
+        int width = Arrays.stream(widths).filter(w -> w >= requestedWidth).findFirst().orElse(-1);
+        if (width < 0) {
+            return Optional.empty();
+        }
+        Integer sourceWidth = sourceWidths.get(sourceKey);
+        if (sourceWidth != null && sourceWidth <= width) {
+            // Only narrower variants than the source are made (or it failed to decode): the original it is
+            return Optional.empty();
+        }
+        String variantKey = variantKey(sourceKey, width, compact ? "jpg" : "png");
+        if (imageStorageService.exists(variantKey)) {
+            return Optional.of(variantKey);
+        }
+        ensureDerivatives(sourceKey);
+        return Optional.empty();
+    }
+
+    public void deleteVariants(String sourceKey) {
+        imageVariantRepository.findBySourceKey(sourceKey)
+                .forEach(variant -> imageStorageService.delete(variant.getVariantKey()));
+        imageVariantRepository.deleteBySourceKey(sourceKey);
+    }
+
+    /**
+     * Variant keys per source key, for callers that remove many sources at once.
+     */
+    public Map<String, List<String>> variantKeysOf(Collection<String> sourceKeys) {
+        return imageVariantRepository.findBySourceKeyIn(sourceKeys).stream()
+                .collect(Collectors.groupingBy(ImageVariant::getSourceKey,
+                        Collectors.mapping(ImageVariant::getVariantKey, Collectors.toList())));
+    }
+
+    /**
+     * Keys among {@code keys} that are recorded variants.
+     */
+    public List<String> variantsAmong(Collection<String> keys) {
+        return imageVariantRepository.findVariantKeysIn(keys);
+    }
+
+    /**
+     * Drops the variant rows of sources whose files (variants included) are already gone.
+     */
+    public void forgetVariants(Collection<String> sourceKeys) {
+        if (!sourceKeys.isEmpty()) {
+            imageVariantRepository.deleteBySourceKeyIn(sourceKeys);
+        }
+    }
+
+    private CompletableFuture<Void> ensureDerivatives(String sourceKey) {
+        CompletableFuture<Void> job = new CompletableFuture<>();
+        CompletableFuture<Void> existing = inFlight.putIfAbsent(sourceKey, job);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(sourceKey);
+                    job.complete(null);
+                } catch (RuntimeException e) {
+                    log.error("Derivative generation failed for {}: {}", sourceKey, e.getMessage());
+                    sourceWidths.put(sourceKey, FAILED,
+                            System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(failureRetrySeconds));
+                    job.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(sourceKey, job);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Derivative queue full, skipping {}", sourceKey);
+            inFlight.remove(sourceKey, job);
+            job.completeExceptionally(e);
+        }
+        return job;
+    }
+
+    private void generate(String sourceKey) {
+        BufferedImage original;
+        try (InputStream source = imageStorageService.open(sourceKey)) {
+            original = ImageIO.read(source);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not decode " + sourceKey, e);
+        }
+        if (original == null) {
+            throw new RuntimeException("Unsupported image format: " + sourceKey);
+        }
+        sourceWidths.put(sourceKey, original.getWidth());
+
+        // Walk widths from largest to smallest so each step downsamples the previous result
+        BufferedImage previous = original;
+        for (int i = widths.length - 1; i >= 0; i--) {
+            int width = widths[i];
+            if (width >= original.getWidth()) {
+                continue;
+            }
+            BufferedImage scaled = resize(previous, width);
+            write(sourceKey, scaled, "png");
+            write(sourceKey, scaled, "jpg");
+            previous = scaled;
+        }
+    }
+
+    private void write(String sourceKey, BufferedImage image, String format) {
+        String variantKey = variantKey(sourceKey, image.getWidth(), format);
+        if (imageStorageService.exists(variantKey)) {
+            return;
+        }
+        try {
+            byte[] encoded = "jpg".equals(format) ? encodeJpeg(image) : encodePng(image);
+            imageStorageService.writeAtomically(variantKey, encoded);
+
+            ImageVariant variant = new ImageVariant();
+            variant.setSourceKey(sourceKey);
+            variant.setVariantKey(variantKey);
+            variant.setWidth(image.getWidth());
+            variant.setHeight(image.getHeight());
+            variant.setFormat(format);
+            variant.setFileSize((long) encoded.length);
+            imageVariantRepository.save(variant);
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Variant {} already recorded", variantKey);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write variant " + variantKey, e);
+        }
+    }
+
+    /**
+     * Halves with bilinear filtering until within 2x of the target, then does the final step;
+     * cheaper than bicubic and avoids the aliasing of a single large bilinear jump.
+     */
+    static BufferedImage resize(BufferedImage source, int targetWidth) {
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+            BufferedImage step = new BufferedImage(width, height, source.getColorModel().hasAlpha()
+                    ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = step.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(current, 0, 0, width, height, null);
+            graphics.dispose();
+            current = step;
+        } while (width > targetWidth);
+        return current;
+    }
+
+    private byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        if (image.getColorModel().hasAlpha()) {
+            // JPEG has no alpha channel; flatten onto white
+            BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = opaque.createGraphics();
+            graphics.drawImage(image, 0, 0, Color.WHITE, null);
+            graphics.dispose();
+            image = opaque;
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    static String variantKey(String sourceKey, int width, String format) {
+        int dot = sourceKey.lastIndexOf('.');
+        String base = dot > 0 ? sourceKey.substring(0, dot) : sourceKey;
+        return base + "_w" + width + "." + format;
+    }
+
+    private static boolean isVariant(String key) {
+        return key.matches(".*_w\\d+\\.(png|jpg)");
+    }
+}
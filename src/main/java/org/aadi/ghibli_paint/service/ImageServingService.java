@@ -0,0 +1,145 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
+import org.aadi.ghibli_paint.util.LruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Public image serving. Stored files are UUID-named and never rewritten, so responses carry a
+ * strong content-hash ETag and a year-long immutable Cache-Control, and revalidations end in 304.
+ * When the store can presign reads, clients are redirected to it instead of being proxied.
+ */
+@Service
+@RequiredArgsConstructor
+public class ImageServingService {
+
+    private static final Pattern SAFE_FILENAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*");
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String FALLBACK = "public, max-age=60";
+    // Presigned URLs expire, so a redirect is only reused briefly (well inside the signature TTL)
+    private static final String REDIRECT = "private, max-age=60";
+
+    private record Metadata(String etag, MediaType contentType) {
+    }
+
+    @Value("${app.serve.metadata-cache-entries:50000}")
+    private int metadataCacheEntries;
+
+    private final ImageStorageService imageStorageService;
+    private final FileTransferService fileTransferService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final GeneratedImageRepository generatedImageRepository;
+    private final MeterRegistry meterRegistry;
+
+    private LruCache<String, Metadata> metadataCache;
+
+    @PostConstruct
+    void init() {
+        metadataCache = new LruCache<>(metadataCacheEntries);
+    }
+
+    /**
+     * Serves a stored image, or with {@code width} the nearest downscaled variant of it
+     * ({@code compact} selects the lossy JPEG variant).
+     */
+    public void serve(String filename, Integer width, boolean compact,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!SAFE_FILENAME.matcher(filename).matches()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            record("original", "bad_request", 0);
+            return;
+        }
+        Optional<ImageStore.Stat> stat = imageStorageService.stat(filename);
+        if (stat.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            record("original", "not_found", 0);
+            return;
+        }
+
+        String cacheControl = IMMUTABLE;
+        String servedAs = "original";
+        if (width != null) {
+            Optional<String> variant = imageDerivativeService.variantFor(filename, width, compact);
+            if (variant.isPresent()) {
+                filename = variant.get();
+                stat = imageStorageService.stat(filename);
+                servedAs = "variant";
+            } else {
+                // The original stands in for a variant that may appear later; don't pin it to this URL
+                cacheControl = FALLBACK;
+                servedAs = "fallback";
+            }
+        }
+
+        if (stat.isEmpty()) {
+            // The variant was removed between lookup and stat
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            record(servedAs, "not_found", 0);
+            return;
+        }
+
+        Metadata metadata = metadataFor(filename);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        long lastModified = stat.get().lastModified().toEpochMilli();
+        if (new ServletWebRequest(request, response).checkNotModified(metadata.etag(), lastModified)) {
+            record(servedAs, "not_modified", 0);
+            return;
+        }
+        Optional<URI> presigned = imageStorageService.presignedGet(filename, metadata.contentType(), null);
+        if (presigned.isPresent()) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, REDIRECT);
+            response.sendRedirect(presigned.get().toString());
+            record(servedAs, "redirect", 0);
+            return;
+        }
+        long bytes = fileTransferService.transfer(request, response, filename, stat.get(), metadata.contentType(),
+                metadata.etag(), null);
+        record(servedAs, switch (response.getStatus()) {
+            case HttpServletResponse.SC_PARTIAL_CONTENT -> "partial";
+            case HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE -> "unsatisfiable";
+            default -> "ok";
+        }, bytes);
+    }
+
+    private void record(String servedAs, String result, long bytes) {
+        Counter.builder("image.serve.requests")
+                .tag("served", servedAs)
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+        if (bytes > 0) {
+            DistributionSummary.builder("image.serve.bytes")
+                    .baseUnit("bytes")
+                    .tag("served", servedAs)
+                    .register(meterRegistry)
+                    .record(bytes);
+        }
+    }
+
+    private Metadata metadataFor(String filename) throws IOException {
+        Metadata metadata = metadataCache.get(filename);
+        if (metadata == null) {
+            // Rows written before digests were recorded fall back to the (immutable) filename
+            String digest = generatedImageRepository.findContentHashByStorageKey(filename).orElse(filename);
+            metadata = new Metadata("\"" + digest + "\"", imageStorageService.contentTypeOf(filename));
+            metadataCache.put(filename, metadata);
+        }
+        return metadata;
+    }
+}
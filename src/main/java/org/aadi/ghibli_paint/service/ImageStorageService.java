@@ -0,0 +1,297 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.dto.StoredImage;
+import org.aadi.ghibli_paint.entity.GeneratedImage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Front door to the configured {@link ImageStore}. Incoming bodies are staged and hashed in
+ * {@code app.storage.path} before being handed to the store, so the store only ever sees
+ * complete objects.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImageStorageService {
+
+    @Value("${app.storage.path:generated-images}")
+    private String storagePath;
+
+    private final MeterRegistry meterRegistry;
+    private final ImageStore imageStore;
+
+    private Timer streamWrites;
+    private Timer blobWrites;
+
+    @PostConstruct
+    void init() {
+        // Streamed writes are paced by the source, so that timer includes waiting on upstream reads
+        streamWrites = Timer.builder("image.storage.write").tag("kind", "stream").register(meterRegistry);
+        blobWrites = Timer.builder("image.storage.write").tag("kind", "blob").register(meterRegistry);
+    }
+
+    /**
+     * A body written and hashed into a temp file of the staging directory, not yet in the store.
+     */
+    public record StagedImage(Path file, String filename, long size, String sha256, long startNanos) {
+    }
+
+    /**
+     * Streams the body into a temp file in the staging directory, hashing it on the way through,
+     * and hands it to the store once the last buffer is written. Nothing is aggregated on heap.
+     */
+    public Mono<StoredImage> store(Flux<DataBuffer> content, String extension) {
+        return stage(content, extension).flatMap(this::commit);
+    }
+
+    /**
+     * First half of {@link #store}: only the streamed write, so a caller can bound it (timeouts,
+     * retries) without also bounding the hand-off to a possibly remote store. The temp file is
+     * removed if the write fails or is cancelled; once staged it belongs to the caller, who passes
+     * it to {@link #commit}.
+     */
+    public Mono<StagedImage> stage(Flux<DataBuffer> content, String extension) {
+        return Mono.fromCallable(this::createTempFile)
+                .flatMap(tempFile -> write(content, tempFile, UUID.randomUUID() + "." + extension, System.nanoTime())
+                        .doOnError(error -> deleteQuietly(tempFile))
+                        .doOnCancel(() -> deleteQuietly(tempFile)));
+    }
+
+    /**
+     * Second half of {@link #store}: reads the dimensions from the image header, hands the staged
+     * file to the store, then removes the temp file whether or not the store took it.
+     */
+    public Mono<StoredImage> commit(StagedImage staged) {
+        return Mono.using(
+                        staged::file,
+                        tempFile -> Mono.fromCallable(() -> {
+                                    Optional<Dimension> dimensions = dimensionsOf(tempFile);
+                                    imageStore.putFile(staged.filename(), tempFile);
+                                    return new StoredImage(staged.filename(), staged.size(), staged.sha256(),
+                                            dimensions.map(dimension -> dimension.width).orElse(null),
+                                            dimensions.map(dimension -> dimension.height).orElse(null));
+                                })
+                                // May be a remote upload, which must not run on a file-channel or event-loop thread
+                                .subscribeOn(Schedulers.boundedElastic()),
+                        this::deleteQuietly)
+                .doOnSuccess(stored -> streamWrites.record(System.nanoTime() - staged.startNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Stores a small, already-encoded blob (e.g. a thumbnail); readers never observe a partial object.
+     */
+    public void writeAtomically(String filename, byte[] content) throws IOException {
+        long start = System.nanoTime();
+        imageStore.put(filename, new ByteArrayInputStream(content), content.length);
+        blobWrites.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Moves an uploaded part into a temp file we own, so it outlives the multipart cleanup and can
+     * be read back through an asynchronous file channel. Callers remove it with {@link #discard}.
+     */
+    public Path stageUpload(MultipartFile file) throws IOException {
+        Path tempFile = createTempFile();
+        try {
+            file.transferTo(tempFile);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(tempFile);
+            throw e;
+        }
+        return tempFile;
+    }
+
+    public void discard(Path stagedFile) {
+        deleteQuietly(stagedFile);
+    }
+
+    public boolean exists(String filename) {
+        return imageStore.exists(filename);
+    }
+
+    public Optional<ImageStore.Stat> stat(String filename) throws IOException {
+        return imageStore.stat(filename);
+    }
+
+    public InputStream open(String filename) throws IOException {
+        return imageStore.get(filename);
+    }
+
+    public InputStream openRange(String filename, long offset, long length) throws IOException {
+        return imageStore.get(filename, offset, length);
+    }
+
+    public ImageStore.Listing list(String cursor, int limit) throws IOException {
+        return imageStore.list(cursor, limit);
+    }
+
+    public Optional<Path> localPath(String filename) {
+        return imageStore.localPath(filename);
+    }
+
+    public Optional<URI> presignedGet(String filename, MediaType contentType, String contentDisposition) {
+        return imageStore.presignedGet(filename, contentType.toString(), contentDisposition);
+    }
+
+    /**
+     * Sniffs the stored bytes rather than trusting the extension; falls back to the
+     * extension and finally to application/octet-stream.
+     */
+    public MediaType contentTypeOf(String filename) throws IOException {
+        byte[] header;
+        try (InputStream in = imageStore.get(filename, 0, 12)) {
+            header = in.readNBytes(12);
+        }
+        int read = header.length;
+        if (read >= 8 && header[0] == (byte) 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            return MediaType.IMAGE_PNG;
+        }
+        if (read >= 3 && header[0] == (byte) 0xFF && header[1] == (byte) 0xD8 && header[2] == (byte) 0xFF) {
+            return MediaType.IMAGE_JPEG;
+        }
+        if (read >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return MediaType.parseMediaType("image/webp");
+        }
+        if (read >= 4 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8') {
+            return MediaType.IMAGE_GIF;
+        }
+        return MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    public void delete(String filename) {
+        try {
+            purge(filename);
+        } catch (IOException e) {
+            log.error("Error deleting image file {}", filename, e);
+        }
+    }
+
+    /**
+     * Like {@link #delete} but lets the failure through, for callers that retry.
+     */
+    public void purge(String filename) throws IOException {
+        imageStore.delete(filename);
+    }
+
+    /**
+     * Returns the stored filename of an image, falling back to the tail of the serve URL
+     * for rows written before the storage key was recorded.
+     */
+    public String keyOf(GeneratedImage image) {
+        if (image.getStorageKey() != null) {
+            return image.getStorageKey();
+        }
+        // e.g. "http://localhost:8080/api/images/serve/uuid.png" -> "uuid.png"
+        return image.getImageUrl().substring(image.getImageUrl().lastIndexOf('/') + 1);
+    }
+
+    private Mono<StagedImage> write(Flux<DataBuffer> content, Path tempFile, String filename, long startNanos) {
+        MessageDigest digest = sha256();
+        AtomicLong size = new AtomicLong();
+
+        Flux<DataBuffer> hashed = content.doOnNext(buffer -> {
+            size.addAndGet(buffer.readableByteCount());
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                iterator.forEachRemaining(digest::update);
+            }
+        });
+
+        return DataBufferUtils.write(hashed, tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                .then(Mono.fromCallable(() -> {
+                    if (size.get() == 0) {
+                        throw new RuntimeException("No image data returned from Stability AI");
+                    }
+                    return new StagedImage(tempFile, filename, size.get(), HexFormat.of().formatHex(digest.digest()),
+                            startNanos);
+                }));
+    }
+
+    /**
+     * Width and height from the image header alone; for a PNG that is the IHDR chunk, so nothing
+     * is decoded.
+     */
+    private static Optional<Dimension> dimensionsOf(Path file) {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = stream == null ? Collections.emptyIterator() : ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                return Optional.of(new Dimension(reader.getWidth(0), reader.getHeight(0)));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            log.debug("Could not read dimensions of {}: {}", file, e.toString());
+            return Optional.empty();
+        }
+    }
+
+    private Path createTempFile() throws IOException {
+        Path directory = Paths.get(storagePath);
+        Files.createDirectories(directory);
+        // Same directory as the local store's shards so handing a file over stays an atomic rename
+        Path tempFile = Files.createTempFile(directory, ".upload-", ".tmp");
+        if (tempFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            // createTempFile defaults to owner-only; stored images keep the usual rw-r--r--
+            Files.setPosixFilePermissions(tempFile, PosixFilePermissions.fromString("rw-r--r--"));
+        }
+        return tempFile;
+    }
+
+    private void deleteQuietly(Path tempFile) {
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.warn("Could not remove temp file {}", tempFile, e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
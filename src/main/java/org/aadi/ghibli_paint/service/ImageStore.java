@@ -0,0 +1,95 @@
+package org.aadi.ghibli_paint.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Backend for stored image bytes, addressed by storage key (e.g. {@code uuid.png}). Keys are
+ * written once and never rewritten. Hashing, content sniffing and staging stay in
+ * {@link ImageStorageService}; implementations only move bytes.
+ */
+public interface ImageStore {
+
+    record Stat(long size, Instant lastModified) {
+    }
+
+    /**
+     * One page of a full listing; {@code cursor} resumes after the last key and is null once the
+     * listing is complete.
+     */
+    record Listing(List<String> keys, String cursor) {
+    }
+
+    /**
+     * Stores {@code length} bytes read from {@code content} under {@code key}. Readers never
+     * observe a partially written object.
+     */
+    void put(String key, InputStream content, long length) throws IOException;
+
+    /**
+     * Stores a staged local file under {@code key} and takes ownership of it; the staged file is
+     * gone afterwards. Stores on the staging filesystem override this with a rename.
+     */
+    default void putFile(String key, Path staged) throws IOException {
+        try (InputStream in = Files.newInputStream(staged)) {
+            put(key, in, Files.size(staged));
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * Opens {@code length} bytes of the object starting at {@code offset}.
+     */
+    InputStream get(String key, long offset, long length) throws IOException;
+
+    default InputStream get(String key) throws IOException {
+        Optional<Stat> stat = stat(key);
+        if (stat.isEmpty()) {
+            throw new IOException("No stored object " + key);
+        }
+        return get(key, 0, stat.get().size());
+    }
+
+    Optional<Stat> stat(String key) throws IOException;
+
+    default boolean exists(String key) {
+        try {
+            return stat(key).isPresent();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes the object; missing keys are not an error.
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Lists up to {@code limit} keys after {@code cursor} (null to start from the beginning). The
+     * order is the store's own but stable, so a cursor can be persisted and resumed later; objects
+     * written during a listing may or may not show up in it.
+     */
+    Listing list(String cursor, int limit) throws IOException;
+
+    /**
+     * The object as a local file, for zero-copy serving. Empty for remote stores.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+
+    /**
+     * A short-lived URL clients can fetch the object from directly, when the backend can sign one.
+     */
+    default Optional<URI> presignedGet(String key, String contentType, String contentDisposition) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,180 @@
+package org.aadi.ghibli_paint.service;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.zip.CRC32C;
+
+/**
+ * Stores images under {@code app.storage.path} in a two-level hashed layout
+ * ({@code 3f/a2/uuid.png}, 65536 leaf directories) so no single directory grows to millions of
+ * entries. Files written before sharding sit directly in the root and are still found there.
+ */
+@Service
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalImageStore implements ImageStore {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    @Value("${app.storage.path:generated-images}")
+    private String storagePath;
+
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        Path root = Paths.get(storagePath);
+        Files.createDirectories(root);
+        Path tempFile = Files.createTempFile(root, ".put-", ".tmp");
+        try {
+            Files.copy(content, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            putFile(key, tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Staged files live in the storage root, so moving one into its shard is an atomic rename.
+     */
+    @Override
+    public void putFile(String key, Path staged) throws IOException {
+        Path target = shardedPath(key);
+        Files.createDirectories(target.getParent());
+        Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        Path path = localPath(key).orElseThrow(() -> new NoSuchFileException(key));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ).position(offset);
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public Optional<Stat> stat(String key) throws IOException {
+        Optional<Path> path = localPath(key);
+        if (path.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path.get(), BasicFileAttributes.class);
+            return Optional.of(new Stat(attributes.size(), attributes.lastModifiedTime().toInstant()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(shardedPath(key));
+        Files.deleteIfExists(flatPath(key));
+    }
+
+    /**
+     * Lists the flat root first, then the shards in hex order, each directory in name order. The
+     * cursor is the last key's path relative to the root ({@code uuid.png} or
+     * {@code 3f/a2/uuid.png}). Directories are streamed, keeping only the next {@code limit}
+     * names, so huge legacy roots or leaves never have to fit in memory.
+     */
+    @Override
+    public Listing list(String cursor, int limit) throws IOException {
+        Path root = Paths.get(storagePath);
+        List<String> keys = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return new Listing(keys, null);
+        }
+        String[] position = cursor == null ? new String[0] : cursor.split("/");
+        if (position.length <= 1) {
+            keys.addAll(namesAfter(root, position.length == 1 ? position[0] : null, limit));
+            if (keys.size() == limit) {
+                return new Listing(keys, keys.get(limit - 1));
+            }
+            position = new String[0];
+        }
+        int first = position.length == 3 ? HEX.parseHex(position[0])[0] & 0xff : 0;
+        int second = position.length == 3 ? HEX.parseHex(position[1])[0] & 0xff : 0;
+        for (int i = first; i < 256; i++) {
+            Path outer = root.resolve(HEX.toHexDigits((byte) i));
+            if (!Files.isDirectory(outer)) {
+                continue;
+            }
+            for (int j = i == first ? second : 0; j < 256; j++) {
+                Path leaf = outer.resolve(HEX.toHexDigits((byte) j));
+                if (!Files.isDirectory(leaf)) {
+                    continue;
+                }
+                String after = i == first && j == second && position.length == 3 ? position[2] : null;
+                for (String name : namesAfter(leaf, after, limit - keys.size())) {
+                    keys.add(name);
+                    if (keys.size() == limit) {
+                        return new Listing(keys, HEX.toHexDigits((byte) i) + "/" + HEX.toHexDigits((byte) j) + "/" + name);
+                    }
+                }
+            }
+        }
+        return new Listing(keys, null);
+    }
+
+    /**
+     * The first {@code limit} regular file names after {@code after}, in order. Dot-files are
+     * in-flight staging files, not stored objects.
+     */
+    private static List<String> namesAfter(Path directory, String after, int limit) throws IOException {
+        TreeSet<String> names = new TreeSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.startsWith(".") || (after != null && name.compareTo(after) <= 0)
+                        || (names.size() == limit && name.compareTo(names.last()) >= 0)
+                        || !Files.isRegularFile(entry)) {
+                    continue;
+                }
+                names.add(name);
+                if (names.size() > limit) {
+                    names.pollLast();
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        Path sharded = shardedPath(key);
+        if (Files.exists(sharded)) {
+            return Optional.of(sharded);
+        }
+        Path flat = flatPath(key);
+        return Files.exists(flat) ? Optional.of(flat) : Optional.empty();
+    }
+
+    Path shardedPath(String key) {
+        CRC32C crc = new CRC32C();
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        int hash = (int) crc.getValue();
+        return Paths.get(storagePath, HEX.toHexDigits((byte) hash), HEX.toHexDigits((byte) (hash >>> 8)), key);
+    }
+
+    private Path flatPath(String key) {
+        return Paths.get(storagePath).resolve(key);
+    }
+}
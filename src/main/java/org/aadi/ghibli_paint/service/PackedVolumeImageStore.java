@@ -0,0 +1,848 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.util.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Haystack-style store: image blobs are appended to large volume files instead of getting a file
+ * each, so a write is one positional append and a read one positional read on an already-open
+ * channel, with no per-image inode, directory entry or open/close.
+ *
+ * <p>Each record is a 32-byte header (magic, flags, key length, CRC32C of the data, data length,
+ * timestamp), the key, then the data, padded to 8 bytes. The index of key to location lives in
+ * memory (~150 bytes per image) and is checkpointed to {@code index.ckpt}; on startup the
+ * checkpoint is loaded and records appended after it are replayed, stopping at the first torn or
+ * corrupt record. Deletes append a tombstone, which stays live for as long as any volume that may
+ * hold an older copy of the key does: a rebuild from the volumes would otherwise bring the image
+ * back. A background compactor rewrites the live records and still-needed tombstones of sealed
+ * volumes that are mostly garbage into the active volume, paced to a byte budget.
+ */
+@Service
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "packed")
+@RequiredArgsConstructor
+@Slf4j
+public class PackedVolumeImageStore implements ImageStore {
+
+    private static final int RECORD_MAGIC = 0x47505631;      // "GPV1"
+    private static final int CHECKPOINT_MAGIC = 0x47504958;  // "GPIX"
+    private static final int CHECKPOINT_VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int ALIGNMENT = 8;
+    private static final byte LIVE = 0;
+    private static final byte TOMBSTONE = 1;
+    private static final int COPY_CHUNK = 64 * 1024;
+    private static final String CHECKPOINT_FILE = "index.ckpt";
+
+    /**
+     * Where a live record sits; {@code offset} is the start of its header.
+     */
+    private record Needle(int volume, long offset, int keyLength, long length, int checksum, long timestamp) {
+
+        long dataOffset() {
+            return offset + HEADER_SIZE + keyLength;
+        }
+
+        long recordSize() {
+            return align(HEADER_SIZE + keyLength + length);
+        }
+    }
+
+    /**
+     * A delete still to be honoured by a rebuild: every copy of the key was written to a volume
+     * between {@code firstVolume} and {@code lastVolume}, since records only go to the active one.
+     */
+    private record Tombstone(Needle needle, int firstVolume, int lastVolume) {
+    }
+
+    private static final class Volume {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        long writePosition;  // guarded by writeLock
+        final AtomicLong garbageBytes = new AtomicLong();
+
+        Volume(int id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+    @Value("${app.storage.packed.path:${app.storage.path:generated-images}/volumes}")
+    private String volumePath;
+
+    @Value("${app.storage.packed.volume-size-mb:1024}")
+    private long volumeSizeMb;
+
+    @Value("${app.storage.packed.fsync:false}")
+    private boolean fsync;
+
+    @Value("${app.storage.packed.compaction-threshold:0.3}")
+    private double compactionThreshold;
+
+    @Value("${app.storage.packed.compaction-bytes-per-second:33554432}")
+    private long compactionBytesPerSecond;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Needle> index = new ConcurrentHashMap<>();
+    private final Map<String, Tombstone> tombstones = new HashMap<>();  // guarded by writeLock
+    // Oldest volume holding a superseded copy, for keys written more than once; guarded by writeLock
+    private final Map<String, Integer> firstCopies = new HashMap<>();
+    private final Map<Integer, Volume> volumes = new ConcurrentHashMap<>();
+    private final List<Volume> retired = new ArrayList<>();  // compacted away, closed on the next pass
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Object checkpointLock = new Object();
+
+    private Path directory;
+    private long volumeBytes;
+    private Volume active;  // guarded by writeLock
+    private int nextVolumeId = 1;  // guarded by writeLock
+    private Counter compactedBytes;
+
+    @PostConstruct
+    void start() throws IOException {
+        directory = Paths.get(volumePath);
+        Files.createDirectories(directory);
+        volumeBytes = volumeSizeMb * 1024 * 1024;
+        recover();
+
+        Gauge.builder("image.store.packed.volumes", volumes, Map::size).register(meterRegistry);
+        Gauge.builder("image.store.packed.entries", index, Map::size).register(meterRegistry);
+        Gauge.builder("image.store.packed.garbage", this, PackedVolumeImageStore::garbageBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        compactedBytes = Counter.builder("image.store.packed.compacted").baseUnit("bytes").register(meterRegistry);
+        log.info("Packed image store at {}: {} volumes, {} images", directory, volumes.size(), index.size());
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        checkpoint();
+        for (Volume volume : volumes.values()) {
+            volume.channel.close();
+        }
+        closeRetired();
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        writeLock.lock();
+        try {
+            Needle needle = append(key, content, length, System.currentTimeMillis());
+            supersede(key, index.put(key, needle));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        Needle needle = needle(key);
+        Volume volume = volumes.get(needle.volume());
+        if (volume == null) {
+            // Compacted between the lookup and now; the index already points at the new copy
+            needle = needle(key);
+            volume = volumes.get(needle.volume());
+            if (volume == null) {
+                throw new NoSuchFileException(key);
+            }
+        }
+        long start = needle.dataOffset() + Math.min(offset, needle.length());
+        long end = needle.dataOffset() + Math.min(needle.length(), offset + length);
+        return new ChannelRangeInputStream(volume.channel, start, end);
+    }
+
+    @Override
+    public Optional<Stat> stat(String key) {
+        Needle needle = index.get(key);
+        return needle == null
+                ? Optional.empty()
+                : Optional.of(new Stat(needle.length(), Instant.ofEpochMilli(needle.timestamp())));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        writeLock.lock();
+        try {
+            Needle needle = index.remove(key);
+            if (needle == null) {
+                return;
+            }
+            retire(needle);
+            Needle record = appendRecord(TOMBSTONE, key, InputStream.nullInputStream(), 0,
+                    System.currentTimeMillis());
+            tombstones.put(key, tombstoneFor(key, record, needle));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Walks record headers in volume order, so the cursor is {@code volume:offset} and a page costs
+     * a couple of small positional reads per record rather than a scan of the whole index. Records
+     * are listed only where the index still points at them, which skips tombstones and superseded
+     * copies.
+     */
+    @Override
+    public Listing list(String cursor, int limit) throws IOException {
+        int startVolume = cursor == null ? 0 : Integer.parseInt(cursor.substring(0, cursor.indexOf(':')));
+        long startOffset = cursor == null ? 0 : Long.parseLong(cursor.substring(cursor.indexOf(':') + 1));
+        List<String> keys = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        for (int id : volumes.keySet().stream().filter(id -> id >= startVolume).sorted().toList()) {
+            Volume volume = volumes.get(id);
+            if (volume == null) {
+                continue;
+            }
+            long end;
+            writeLock.lock();
+            try {
+                end = volume.writePosition;
+            } finally {
+                writeLock.unlock();
+            }
+            long position = id == startVolume ? startOffset : 0;
+            try {
+                while (position < end) {
+                    header.clear();
+                    readFully(volume.channel, header, position);
+                    int keyLength = Short.toUnsignedInt(header.getShort(6));
+                    long length = header.getLong(16);
+                    ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+                    readFully(volume.channel, keyBuffer, position + HEADER_SIZE);
+                    String key = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+                    Needle needle = index.get(key);
+                    if (needle != null && needle.volume() == id && needle.offset() == position) {
+                        keys.add(key);
+                    }
+                    position += align(HEADER_SIZE + keyLength + length);
+                    if (keys.size() == limit) {
+                        return new Listing(keys, id + ":" + position);
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                // Compacted away mid-listing; its live records were moved to the active volume
+            }
+        }
+        return new Listing(keys, null);
+    }
+
+    /**
+     * Writes the index and per-volume write positions to disk, so startup only replays records
+     * appended since. The snapshot is taken under the write lock and written outside it;
+     * checkpoints are serialized so an older snapshot never replaces a newer one. Recovery trusts
+     * everything below a checkpointed position without checking it, so the volumes are forced
+     * before the checkpoint is written even when per-write fsync is off.
+     */
+    @Scheduled(fixedDelayString = "${app.storage.packed.checkpoint-interval-ms:60000}")
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            writeCheckpoint();
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        Map<String, Needle> entries;
+        Map<String, Tombstone> pendingDeletes;
+        Map<String, Integer> superseded;
+        Map<Integer, long[]> positions = new HashMap<>();
+        List<Volume> snapshotVolumes;
+        writeLock.lock();
+        try {
+            entries = new HashMap<>(index);
+            pendingDeletes = new HashMap<>(tombstones);
+            superseded = new HashMap<>(firstCopies);
+            snapshotVolumes = new ArrayList<>(volumes.values());
+            snapshotVolumes.forEach(volume ->
+                    positions.put(volume.id, new long[]{volume.writePosition, volume.garbageBytes.get()}));
+        } finally {
+            writeLock.unlock();
+        }
+        for (Volume volume : snapshotVolumes) {
+            try {
+                volume.channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Compacted away since the snapshot; its live records were moved to the active volume
+            }
+        }
+
+        Path tempFile = Files.createTempFile(directory, ".ckpt-", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeInt(positions.size());
+            for (Map.Entry<Integer, long[]> position : positions.entrySet()) {
+                out.writeInt(position.getKey());
+                out.writeLong(position.getValue()[0]);
+                out.writeLong(position.getValue()[1]);
+            }
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Needle> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeNeedle(out, entry.getValue());
+            }
+            out.writeInt(pendingDeletes.size());
+            for (Map.Entry<String, Tombstone> entry : pendingDeletes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeNeedle(out, entry.getValue().needle());
+                out.writeInt(entry.getValue().firstVolume());
+                out.writeInt(entry.getValue().lastVolume());
+            }
+            out.writeInt(superseded.size());
+            for (Map.Entry<String, Integer> entry : superseded.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tempFile, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeNeedle(DataOutputStream out, Needle needle) throws IOException {
+        out.writeInt(needle.volume());
+        out.writeLong(needle.offset());
+        out.writeLong(needle.length());
+        out.writeInt(needle.checksum());
+        out.writeLong(needle.timestamp());
+    }
+
+    /**
+     * Rewrites the live records of sealed volumes whose garbage exceeds the threshold into the
+     * active volume, then deletes them. Tombstones are carried along while an older copy of their
+     * key may still be on disk, and become garbage once the last volume that could hold one is
+     * gone. Copy I/O is paced to {@code compaction-bytes-per-second} and the write lock is held for
+     * one record at a time, so uploads interleave with compaction.
+     */
+    @Scheduled(fixedDelayString = "${app.storage.packed.compaction-interval-ms:600000}")
+    public void compact() throws IOException {
+        closeRetired();
+        long intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(COPY_CHUNK) / compactionBytesPerSecond);
+        TokenBucket budget = new TokenBucket(16, intervalNanos, System.nanoTime());
+
+        for (Volume volume : compactionCandidates()) {
+            long copied = 0;
+            List<Map.Entry<String, Needle>> live = index.entrySet().stream()
+                    .filter(entry -> entry.getValue().volume() == volume.id)
+                    .toList();
+            for (Map.Entry<String, Needle> entry : live) {
+                pace(budget, entry.getValue().recordSize());
+                if (move(entry.getKey(), entry.getValue(), volume)) {
+                    copied += entry.getValue().recordSize();
+                }
+            }
+            int carried = 0;
+            for (Map.Entry<String, Tombstone> entry : tombstonesIn(volume)) {
+                if (carry(entry.getKey(), entry.getValue(), volume)) {
+                    carried++;
+                }
+            }
+            compactedBytes.increment(copied);
+            writeLock.lock();
+            try {
+                volumes.remove(volume.id);
+                settleTombstones();
+            } finally {
+                writeLock.unlock();
+            }
+            // In-flight reads may still hold the channel; it is closed on the next pass
+            retired.add(volume);
+            checkpoint();
+            Files.deleteIfExists(volume.path);
+            log.info("Compacted volume {}: moved {} live records ({} bytes), carried {} tombstones", volume.id,
+                    live.size(), copied, carried);
+        }
+    }
+
+    private List<Volume> compactionCandidates() {
+        writeLock.lock();
+        try {
+            return volumes.values().stream()
+                    .filter(volume -> volume != active && volume.writePosition > 0)
+                    .filter(volume -> (double) volume.garbageBytes.get() / volume.writePosition >= compactionThreshold)
+                    .toList();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private boolean move(String key, Needle needle, Volume from) throws IOException {
+        writeLock.lock();
+        try {
+            // Deleted (or rewritten) since the scan; nothing to carry over
+            if (!needle.equals(index.get(key))) {
+                return false;
+            }
+            InputStream content = new ChannelRangeInputStream(from.channel, needle.dataOffset(),
+                    needle.dataOffset() + needle.length());
+            Needle moved = append(key, content, needle.length(), needle.timestamp());
+            if (moved.checksum() != needle.checksum()) {
+                log.error("Checksum mismatch for {} while compacting volume {}", key, from.id);
+            }
+            index.put(key, moved);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private List<Map.Entry<String, Tombstone>> tombstonesIn(Volume volume) {
+        writeLock.lock();
+        try {
+            return tombstones.entrySet().stream()
+                    .filter(entry -> entry.getValue().needle().volume() == volume.id)
+                    .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+                    .toList();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites a tombstone into the active volume, unless the volume being compacted is the only
+     * one left that could hold a copy of its key, or the key has been written again since.
+     */
+    private boolean carry(String key, Tombstone tombstone, Volume from) throws IOException {
+        writeLock.lock();
+        try {
+            if (!tombstone.equals(tombstones.get(key))) {
+                return false;
+            }
+            if (!mayHoldCopies(tombstone.firstVolume(), tombstone.lastVolume(), from.id)) {
+                tombstones.remove(key);
+                return false;
+            }
+            Needle moved = appendRecord(TOMBSTONE, key, InputStream.nullInputStream(), 0,
+                    tombstone.needle().timestamp());
+            tombstones.put(key, new Tombstone(moved, tombstone.firstVolume(), tombstone.lastVolume()));
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Drops what compaction has made moot: tombstones whose key can no longer have a copy on disk,
+     * which turn into garbage where they sit, and superseded-copy marks whose volumes are gone.
+     * Callers hold the write lock.
+     */
+    private void settleTombstones() {
+        tombstones.values().removeIf(tombstone -> {
+            if (mayHoldCopies(tombstone.firstVolume(), tombstone.lastVolume(), -1)) {
+                return false;
+            }
+            retire(tombstone.needle());
+            return true;
+        });
+        firstCopies.entrySet().removeIf(entry -> {
+            Needle current = index.get(entry.getKey());
+            return current == null || !mayHoldCopies(entry.getValue(), current.volume() - 1, -1);
+        });
+    }
+
+    private boolean mayHoldCopies(int firstVolume, int lastVolume, int excluding) {
+        return volumes.keySet().stream().anyMatch(id -> id >= firstVolume && id <= lastVolume && id != excluding);
+    }
+
+    /**
+     * Bookkeeping for a key just written: an overwritten copy becomes garbage but may still be on
+     * disk, and a pending delete of the key is void, since replay would apply the new write after it.
+     * Callers hold the write lock.
+     */
+    private void supersede(String key, Needle previous) {
+        if (previous != null) {
+            retire(previous);
+            firstCopies.merge(key, previous.volume(), Math::min);
+        }
+        Tombstone voided = tombstones.remove(key);
+        if (voided != null) {
+            retire(voided.needle());
+            firstCopies.merge(key, voided.firstVolume(), Math::min);
+        }
+    }
+
+    private Tombstone tombstoneFor(String key, Needle record, Needle deleted) {
+        Integer firstCopy = firstCopies.remove(key);
+        int firstVolume = firstCopy == null ? deleted.volume() : Math.min(firstCopy, deleted.volume());
+        return new Tombstone(record, firstVolume, deleted.volume());
+    }
+
+    private static void pace(TokenBucket budget, long bytes) {
+        try {
+            for (long chunks = (bytes + COPY_CHUNK - 1) / COPY_CHUNK; chunks > 0; chunks--) {
+                budget.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Needle append(String key, InputStream content, long length, long timestamp) throws IOException {
+        return appendRecord(LIVE, key, content, length, timestamp);
+    }
+
+    /**
+     * Appends one record to the active volume. The data goes down first and the header last, so
+     * a record interrupted part-way has no valid header and recovery stops in front of it.
+     * Callers hold the write lock.
+     */
+    private Needle appendRecord(byte flags, String key, InputStream content, long length, long timestamp)
+            throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        Volume volume = volumeFor(align(HEADER_SIZE + keyBytes.length + length));
+        long position = volume.writePosition;
+
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(COPY_CHUNK, Math.max(1, length)));
+        long dataPosition = position + HEADER_SIZE + keyBytes.length;
+        long remaining = length;
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+            int read = content.read(buffer.array(), 0, buffer.limit());
+            if (read < 0) {
+                throw new EOFException("Expected " + length + " bytes for " + key + ", got " + (length - remaining));
+            }
+            crc.update(buffer.array(), 0, read);
+            buffer.limit(read);
+            writeFully(volume.channel, buffer, dataPosition);
+            dataPosition += read;
+            remaining -= read;
+        }
+
+        int checksum = (int) crc.getValue();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length);
+        header.putInt(RECORD_MAGIC)
+                .put(flags)
+                .put((byte) 0)
+                .putShort((short) keyBytes.length)
+                .putInt(checksum)
+                .putInt(0)
+                .putLong(length)
+                .putLong(timestamp)
+                .put(keyBytes)
+                .flip();
+        writeFully(volume.channel, header, position);
+        if (fsync) {
+            volume.channel.force(false);
+        }
+
+        Needle needle = new Needle(volume.id, position, keyBytes.length, length, checksum, timestamp);
+        volume.writePosition = position + needle.recordSize();
+        return needle;
+    }
+
+    private void retire(Needle needle) {
+        Volume volume = volumes.get(needle.volume());
+        if (volume != null) {
+            volume.garbageBytes.addAndGet(needle.recordSize());
+        }
+    }
+
+    /**
+     * The active volume, rolled over once the next record would not fit. A record larger than a
+     * whole volume still goes into a fresh one, which then simply grows past its preallocation.
+     */
+    private Volume volumeFor(long recordSize) throws IOException {
+        if (active == null || (active.writePosition > 0 && active.writePosition + recordSize > volumeBytes)) {
+            active = openVolume(nextVolumeId++, true);
+            volumes.put(active.id, active);
+        }
+        return active;
+    }
+
+    private Volume openVolume(int id, boolean create) throws IOException {
+        Path path = directory.resolve(String.format("volume-%06d.dat", id));
+        FileChannel channel = create
+                ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (create) {
+            // Extend to full size up front (sparse on most filesystems) so appends never grow the file
+            channel.write(ByteBuffer.allocate(1), volumeBytes - 1);
+        }
+        return new Volume(id, path, channel);
+    }
+
+    private void recover() throws IOException {
+        Map<Integer, long[]> checkpointed = loadCheckpoint();
+        int highestCheckpointed = checkpointed.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+
+        List<Integer> ids;
+        try (Stream<Path> files = Files.list(directory)) {
+            ids = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches("volume-\\d+\\.dat"))
+                    .map(name -> Integer.parseInt(name.substring(7, name.length() - 4)))
+                    .sorted()
+                    .toList();
+        }
+        for (int id : ids) {
+            long[] position = checkpointed.get(id);
+            if (position == null && id <= highestCheckpointed) {
+                // Compacted away after the checkpoint was written, but not yet deleted
+                Files.deleteIfExists(directory.resolve(String.format("volume-%06d.dat", id)));
+                continue;
+            }
+            Volume volume = openVolume(id, false);
+            volumes.put(id, volume);
+            if (position != null) {
+                volume.writePosition = position[0];
+                volume.garbageBytes.set(position[1]);
+            }
+            // Volumes are replayed in id order, which is write order: only the newest one is appended to
+            replay(volume);
+            nextVolumeId = id + 1;
+            active = volume;
+        }
+        index.values().removeIf(needle -> !volumes.containsKey(needle.volume()));
+        tombstones.values().removeIf(tombstone -> !volumes.containsKey(tombstone.needle().volume()));
+        settleTombstones();
+    }
+
+    private Map<Integer, long[]> loadCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        Map<Integer, long[]> positions = new HashMap<>();
+        if (!Files.exists(file)) {
+            return positions;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION) {
+                // Also covers version 1, which did not record tombstones; every record is replayed instead
+                log.warn("Ignoring unrecognised checkpoint {}; rebuilding the index from the volumes", file);
+                return positions;
+            }
+            int volumeCount = in.readInt();
+            for (int i = 0; i < volumeCount; i++) {
+                positions.put(in.readInt(), new long[]{in.readLong(), in.readLong()});
+            }
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String key = in.readUTF();
+                index.put(key, readNeedle(in, key));
+            }
+            int tombstoneCount = in.readInt();
+            for (int i = 0; i < tombstoneCount; i++) {
+                String key = in.readUTF();
+                tombstones.put(key, new Tombstone(readNeedle(in, key), in.readInt(), in.readInt()));
+            }
+            int supersededCount = in.readInt();
+            for (int i = 0; i < supersededCount; i++) {
+                firstCopies.put(in.readUTF(), in.readInt());
+            }
+        }
+        return positions;
+    }
+
+    private static Needle readNeedle(DataInputStream in, String key) throws IOException {
+        int keyLength = key.getBytes(StandardCharsets.UTF_8).length;
+        return new Needle(in.readInt(), in.readLong(), keyLength, in.readLong(), in.readInt(), in.readLong());
+    }
+
+    /**
+     * Applies records from the volume's write position onwards, then cuts the volume back to the
+     * end of the last intact record so a torn tail cannot be mistaken for data later.
+     */
+    private void replay(Volume volume) throws IOException {
+        long size = volume.channel.size();
+        long position = volume.writePosition;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        int replayed = 0;
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(volume.channel, header, position);
+            header.flip();
+            if (header.getInt() != RECORD_MAGIC) {
+                break;
+            }
+            byte flags = header.get();
+            header.get();
+            int keyLength = Short.toUnsignedInt(header.getShort());
+            int checksum = header.getInt();
+            header.getInt();
+            long length = header.getLong();
+            long timestamp = header.getLong();
+            if (length < 0 || position + HEADER_SIZE + keyLength + length > size) {
+                break;
+            }
+            ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+            readFully(volume.channel, keyBuffer, position + HEADER_SIZE);
+            String key = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+            Needle needle = new Needle(volume.id, position, keyLength, length, checksum, timestamp);
+            if (checksum(volume.channel, needle.dataOffset(), length) != checksum) {
+                break;
+            }
+
+            if (flags == TOMBSTONE) {
+                Needle deleted = index.remove(key);
+                Tombstone carried = tombstones.get(key);
+                if (deleted != null) {
+                    retire(deleted);
+                    tombstones.put(key, tombstoneFor(key, needle, deleted));
+                } else if (carried != null) {
+                    // Carried forward by a compaction that did not reach its checkpoint
+                    retire(carried.needle());
+                    tombstones.put(key, new Tombstone(needle, carried.firstVolume(), carried.lastVolume()));
+                } else {
+                    volume.garbageBytes.addAndGet(needle.recordSize());
+                }
+            } else {
+                supersede(key, index.put(key, needle));
+            }
+            position += needle.recordSize();
+            replayed++;
+        }
+        volume.writePosition = position;
+        if (position < size) {
+            volume.channel.truncate(position);
+            volume.channel.write(ByteBuffer.allocate(1), Math.max(position + 1, volumeBytes) - 1);
+        }
+        if (replayed > 0) {
+            log.info("Replayed {} records from volume {}", replayed, volume.id);
+        }
+    }
+
+    private void closeRetired() throws IOException {
+        for (Volume volume : retired) {
+            volume.channel.close();
+        }
+        retired.clear();
+    }
+
+    private long garbageBytes() {
+        return volumes.values().stream().mapToLong(volume -> volume.garbageBytes.get()).sum();
+    }
+
+    private Needle needle(String key) throws NoSuchFileException {
+        Needle needle = index.get(key);
+        if (needle == null) {
+            throw new NoSuchFileException(key);
+        }
+        return needle;
+    }
+
+    private static int checksum(FileChannel channel, long position, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_CHUNK);
+        long end = position + length;
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(COPY_CHUNK, end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Reads {@code [position, end)} of a shared channel with positional reads, which leave the
+     * channel's own position alone and are safe to issue from many threads at once.
+     */
+    private static final class ChannelRangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        ChannelRangeInputStream(FileChannel channel, long position, long end) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position)), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
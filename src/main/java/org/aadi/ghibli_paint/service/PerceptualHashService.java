@@ -0,0 +1,203 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.dto.UserImageKeyRef;
+import org.aadi.ghibli_paint.entity.GeneratedImage;
+import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
+import org.aadi.ghibli_paint.util.PerceptualHash;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Fingerprints stored images for near-duplicate lookups: a 64-bit dHash, written to every gallery
+ * row sharing the file. Pixel sizes are not its job; they are read from the header when the image
+ * is stored. Decoding is subsampled to a few dozen pixels
+ * across, so the raster stays a few KB instead of 4 MB for 1024x1024 ARGB.
+ *
+ * <p>Fresh images are queued on a small bounded pool off the request thread. Work that does not
+ * fit, and rows from before fingerprinting existed, are picked up by a throttled backfill.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PerceptualHashService {
+
+    @Value("${app.similarity.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.similarity.workers:1}")
+    private int workers;
+
+    @Value("${app.similarity.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Value("${app.similarity.decode-width:64}")
+    private int decodeWidth;
+
+    @Value("${app.similarity.backfill-batch-size:200}")
+    private int backfillBatchSize;
+
+    private final ImageStorageService imageStorageService;
+    private final GeneratedImageRepository generatedImageRepository;
+    private final SimilarImageService similarImageService;
+    private final MeterRegistry meterRegistry;
+
+    // Set while rows may be waiting that the backfill has already walked past; starts set so the
+    // first pass covers rows from before fingerprinting
+    private final AtomicBoolean backfillNeeded = new AtomicBoolean(true);
+    // Last id of the current backfill pass, null between passes; only the scheduler touches it
+    private Long backfillCursor;
+
+    private ThreadPoolExecutor executor;
+    private Timer decodeTimer;
+    private Counter fingerprinted;
+    private Counter failed;
+    private Counter dropped;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger workerCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "phash-worker-" + workerCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        decodeTimer = Timer.builder("image.fingerprint.decode").register(meterRegistry);
+        fingerprinted = Counter.builder("image.fingerprint.images").tag("result", "hashed").register(meterRegistry);
+        failed = Counter.builder("image.fingerprint.images").tag("result", "failed").register(meterRegistry);
+        dropped = Counter.builder("image.fingerprint.images").tag("result", "deferred").register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues freshly saved rows. Rows sharing a file (generation cache hits) are decoded once.
+     */
+    public void schedule(Collection<GeneratedImage> images) {
+        if (!enabled || images.isEmpty()) {
+            return;
+        }
+        submit(images.stream()
+                .map(image -> new UserImageKeyRef(image.getId(), image.getUser().getId(),
+                        imageStorageService.keyOf(image)))
+                .toList());
+    }
+
+    /**
+     * One batch of rows without a hash per tick, walking the primary key. A pass that reaches the
+     * end stops until something is deferred again. Ticks are skipped while the queue is busy, so
+     * fresh images go first.
+     */
+    @Scheduled(fixedDelayString = "${app.similarity.backfill-interval-ms:10000}",
+            initialDelayString = "${app.similarity.backfill-interval-ms:10000}")
+    public void backfill() {
+        if (!enabled || executor.getQueue().remainingCapacity() < backfillBatchSize) {
+            return;
+        }
+        if (backfillCursor == null) {
+            if (!backfillNeeded.getAndSet(false)) {
+                return;
+            }
+            backfillCursor = 0L;
+        }
+        List<UserImageKeyRef> batch = generatedImageRepository.findUnhashedAfter(backfillCursor,
+                PageRequest.of(0, backfillBatchSize));
+        backfillCursor = batch.size() < backfillBatchSize ? null : batch.get(batch.size() - 1).getId();
+        submit(batch);
+    }
+
+    private void submit(List<UserImageKeyRef> refs) {
+        Map<String, List<UserImageKeyRef>> byKey = refs.stream()
+                .collect(Collectors.groupingBy(UserImageKeyRef::getStorageKey, LinkedHashMap::new, Collectors.toList()));
+        byKey.forEach((key, rows) -> {
+            try {
+                executor.execute(() -> fingerprint(key, rows));
+            } catch (RejectedExecutionException e) {
+                dropped.increment(rows.size());
+                backfillNeeded.set(true);
+                log.debug("Fingerprint queue full, deferring {}", key);
+            }
+        });
+    }
+
+    private void fingerprint(String key, List<UserImageKeyRef> rows) {
+        long decoded;
+        try {
+            decoded = decodeTimer.recordCallable(() -> decode(key));
+        } catch (Exception e) {
+            // Not retried: the backfill only comes back for deferred work, not for unreadable files
+            failed.increment(rows.size());
+            log.warn("Could not fingerprint {}: {}", key, e.toString());
+            return;
+        }
+        long hash = decoded;
+        try {
+            generatedImageRepository.updatePerceptualHash(rows.stream().map(UserImageKeyRef::getId).toList(), hash);
+        } catch (RuntimeException e) {
+            failed.increment(rows.size());
+            backfillNeeded.set(true);
+            log.warn("Could not record fingerprint of {}: {}", key, e.toString());
+            return;
+        }
+        rows.forEach(row -> similarImageService.add(row.getUserId(), row.getId(), hash));
+        fingerprinted.increment(rows.size());
+    }
+
+    private long decode(String key) throws IOException {
+        try (InputStream source = imageStorageService.open(key);
+             ImageInputStream stream = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + key);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                // Every n-th pixel of every n-th row; the rest is decompressed but never stored
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.min(width, height) / decodeWidth);
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage sampled = reader.read(0, param);
+                return PerceptualHash.dHash(sampled);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
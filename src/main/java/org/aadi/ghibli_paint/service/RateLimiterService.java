@@ -0,0 +1,155 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.util.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-user, per-policy token buckets. Lookups go through a {@link ConcurrentHashMap} (lock-free
+ * reads, per-bin locking only when a bucket is first created) and each bucket is a single CAS,
+ * so there is no global lock on the request path. Buckets that have been full for the idle
+ * window are evicted on a schedule to bound memory.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RateLimiterService {
+
+    public enum Policy { GENERATE, BATCH }
+
+    public record PolicyLimits(long burst, long refillPerMinute) {
+
+        public long intervalNanos() {
+            return TimeUnit.MINUTES.toNanos(1) / Math.max(1, refillPerMinute);
+        }
+
+        public long windowSeconds() {
+            return TimeUnit.NANOSECONDS.toSeconds(intervalNanos() * burst);
+        }
+    }
+
+    private record BucketKey(Long userId, Policy policy) {
+    }
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rate-limit.generate.burst:10}")
+    private long generateBurst;
+
+    @Value("${rate-limit.generate.refill-per-minute:10}")
+    private long generateRefillPerMinute;
+
+    @Value("${rate-limit.batch.burst:2}")
+    private long batchBurst;
+
+    @Value("${rate-limit.batch.refill-per-minute:2}")
+    private long batchRefillPerMinute;
+
+    @Value("${rate-limit.idle-eviction-seconds:600}")
+    private long idleEvictionSeconds;
+
+    @Value("${rate-limit.max-buckets:100000}")
+    private int maxBuckets;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<BucketKey, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<Policy, PolicyLimits> limits = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private Counter allowed;
+    private Counter rejected;
+
+    @PostConstruct
+    void init() {
+        limits.put(Policy.GENERATE, new PolicyLimits(generateBurst, generateRefillPerMinute));
+        limits.put(Policy.BATCH, new PolicyLimits(batchBurst, batchRefillPerMinute));
+        allowed = Counter.builder("rate_limit.decisions").tag("result", "allowed").register(meterRegistry);
+        rejected = Counter.builder("rate_limit.decisions").tag("result", "rejected").register(meterRegistry);
+        Gauge.builder("rate_limit.buckets", buckets, Map::size).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public PolicyLimits limitsFor(Policy policy) {
+        return limits.get(policy);
+    }
+
+    public TokenBucket.Decision tryAcquire(Long userId, Policy policy) {
+        return tryAcquire(userId, policy, 1);
+    }
+
+    /**
+     * Charges {@code permits} tokens at once, e.g. one per prompt of a batch.
+     */
+    public TokenBucket.Decision tryAcquire(Long userId, Policy policy, long permits) {
+        long now = System.nanoTime();
+        PolicyLimits policyLimits = limits.get(policy);
+        BucketKey key = new BucketKey(userId, policy);
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            // Soft cap: one caller sweeps, the rest carry on rather than wait
+            if (buckets.size() >= maxBuckets && evicting.compareAndSet(false, true)) {
+                try {
+                    evictIdle();
+                } finally {
+                    evicting.set(false);
+                }
+            }
+            bucket = buckets.computeIfAbsent(key,
+                    k -> new TokenBucket(policyLimits.burst(), policyLimits.intervalNanos(), now));
+        }
+        TokenBucket.Decision decision = bucket.tryAcquire(now, permits);
+        (decision.allowed() ? allowed : rejected).increment();
+        return decision;
+    }
+
+    /**
+     * RateLimit-* headers (IETF draft-ietf-httpapi-ratelimit-headers) describing a decision, plus
+     * Retry-After when it was a rejection.
+     */
+    public HttpHeaders headersFor(Policy policy, TokenBucket.Decision decision) {
+        PolicyLimits policyLimits = limits.get(policy);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("RateLimit-Limit", String.valueOf(policyLimits.burst()));
+        headers.set("RateLimit-Remaining", String.valueOf(decision.remaining()));
+        headers.set("RateLimit-Reset", String.valueOf(toSeconds(decision.resetNanos())));
+        headers.set("RateLimit-Policy", policyLimits.burst() + ";w=" + policyLimits.windowSeconds());
+        if (!decision.allowed()) {
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, toSeconds(decision.retryAfterNanos()))));
+        }
+        return headers;
+    }
+
+    private static long toSeconds(long nanos) {
+        // Round up so clients never retry a moment too early
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limit.eviction-interval-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.SECONDS.toNanos(idleEvictionSeconds);
+        int before = buckets.size();
+        buckets.values().removeIf(bucket -> bucket.isIdleSince(cutoff));
+        int evicted = before - buckets.size();
+        if (evicted > 0) {
+            log.debug("Evicted {} idle rate-limit buckets", evicted);
+        }
+    }
+}
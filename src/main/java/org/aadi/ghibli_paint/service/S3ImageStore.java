@@ -0,0 +1,236 @@
+package org.aadi.ghibli_paint.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Stores images in an S3-compatible bucket (AWS S3, MinIO, Ceph RGW...). Bodies larger than one
+ * part are streamed up as a multipart upload so at most one part is held in memory, and reads can
+ * be handed off to clients as presigned GETs instead of being proxied through the application.
+ */
+@Service
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "s3")
+@Slf4j
+public class S3ImageStore implements ImageStore {
+
+    // S3 rejects multipart parts below 5 MiB (except the last one)
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    @Value("${app.storage.s3.bucket}")
+    private String bucket;
+
+    @Value("${app.storage.s3.prefix:}")
+    private String prefix;
+
+    @Value("${app.storage.s3.region:us-east-1}")
+    private String region;
+
+    @Value("${app.storage.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${app.storage.s3.path-style:false}")
+    private boolean pathStyle;
+
+    @Value("${app.storage.s3.access-key:}")
+    private String accessKey;
+
+    @Value("${app.storage.s3.secret-key:}")
+    private String secretKey;
+
+    @Value("${app.storage.s3.part-size-mb:8}")
+    private int partSizeMb;
+
+    @Value("${app.storage.s3.presign:true}")
+    private boolean presign;
+
+    @Value("${app.storage.s3.presign-ttl-seconds:300}")
+    private long presignTtlSeconds;
+
+    private S3Client client;
+    private S3Presigner presigner;
+    private int partSize;
+
+    @PostConstruct
+    void start() {
+        AwsCredentialsProvider credentials = accessKey.isBlank()
+                ? DefaultCredentialsProvider.create()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        // Path-style addressing is what most local stand-ins (MinIO, LocalStack) expect
+        S3Configuration s3Configuration = S3Configuration.builder().pathStyleAccessEnabled(pathStyle).build();
+
+        var clientBuilder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .serviceConfiguration(s3Configuration);
+        var presignerBuilder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .serviceConfiguration(s3Configuration);
+        if (!endpoint.isBlank()) {
+            clientBuilder.endpointOverride(URI.create(endpoint));
+            presignerBuilder.endpointOverride(URI.create(endpoint));
+        }
+        client = clientBuilder.build();
+        presigner = presignerBuilder.build();
+        partSize = Math.max(MIN_PART_SIZE, partSizeMb * 1024 * 1024);
+        log.info("Storing images in s3://{}/{}", bucket, prefix);
+    }
+
+    @PreDestroy
+    void stop() {
+        presigner.close();
+        client.close();
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        try {
+            if (length <= partSize) {
+                client.putObject(request -> request.bucket(bucket).key(objectKey(key)).contentLength(length),
+                        RequestBody.fromInputStream(content, length));
+            } else {
+                putMultipart(objectKey(key), content);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Could not store " + key, e);
+        }
+    }
+
+    private void putMultipart(String objectKey, InputStream content) throws IOException {
+        String uploadId = client.createMultipartUpload(request -> request.bucket(bucket).key(objectKey)).uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            byte[] buffer = new byte[partSize];
+            int read;
+            while ((read = content.readNBytes(buffer, 0, partSize)) > 0) {
+                int partNumber = parts.size() + 1;
+                String etag = client.uploadPart(
+                        request -> request.bucket(bucket).key(objectKey).uploadId(uploadId).partNumber(partNumber),
+                        RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, read), read)).eTag();
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(etag).build());
+            }
+            client.completeMultipartUpload(request -> request.bucket(bucket).key(objectKey).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()));
+        } catch (IOException | RuntimeException e) {
+            // An abandoned upload keeps its parts (and their storage cost) until aborted
+            try {
+                client.abortMultipartUpload(request -> request.bucket(bucket).key(objectKey).uploadId(uploadId));
+            } catch (SdkException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        try {
+            return client.getObject(request -> request.bucket(bucket).key(objectKey(key))
+                    .range("bytes=" + offset + "-" + (offset + length - 1)));
+        } catch (NoSuchKeyException e) {
+            throw new IOException("No stored object " + key, e);
+        } catch (SdkException e) {
+            throw new IOException("Could not read " + key, e);
+        }
+    }
+
+    @Override
+    public Optional<Stat> stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = client.headObject(request -> request.bucket(bucket).key(objectKey(key)));
+            return Optional.of(new Stat(head.contentLength(), head.lastModified()));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            // HEAD responses carry no body, so a missing key can surface as a bare 404
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("Could not stat " + key, e);
+        } catch (SdkException e) {
+            throw new IOException("Could not stat " + key, e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            client.deleteObject(request -> request.bucket(bucket).key(objectKey(key)));
+        } catch (SdkException e) {
+            throw new IOException("Could not delete " + key, e);
+        }
+    }
+
+    /**
+     * S3 lists in key order, so the cursor is simply the last key (as {@code StartAfter}).
+     */
+    @Override
+    public Listing list(String cursor, int limit) throws IOException {
+        try {
+            ListObjectsV2Response page = client.listObjectsV2(request -> request.bucket(bucket)
+                    .prefix(prefix.isEmpty() ? null : prefix)
+                    .startAfter(cursor == null ? null : objectKey(cursor))
+                    .maxKeys(limit));
+            List<String> keys = page.contents().stream()
+                    .map(object -> object.key().substring(prefix.length()))
+                    .toList();
+            return new Listing(keys, page.isTruncated() && !keys.isEmpty() ? keys.get(keys.size() - 1) : null);
+        } catch (SdkException e) {
+            throw new IOException("Could not list s3://" + bucket + "/" + prefix, e);
+        }
+    }
+
+    @Override
+    public Optional<URI> presignedGet(String key, String contentType, String contentDisposition) {
+        if (!presign) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(presigner.presignGetObject(request -> request
+                            .signatureDuration(Duration.ofSeconds(presignTtlSeconds))
+                            .getObjectRequest(get -> get.bucket(bucket).key(objectKey(key))
+                                    .responseContentType(contentType)
+                                    .responseContentDisposition(contentDisposition)))
+                    .url().toURI());
+        } catch (Exception e) {
+            log.warn("Could not presign {}, proxying instead: {}", key, e.toString());
+            return Optional.empty();
+        }
+    }
+
+    private String objectKey(String key) {
+        return prefix.isEmpty() ? key : prefix + key;
+    }
+}
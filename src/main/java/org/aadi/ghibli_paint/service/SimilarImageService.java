@@ -0,0 +1,226 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.aadi.ghibli_paint.dto.GalleryItem;
+import org.aadi.ghibli_paint.dto.ImageHashRef;
+import org.aadi.ghibli_paint.dto.SimilarImage;
+import org.aadi.ghibli_paint.entity.GeneratedImage;
+import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
+import org.aadi.ghibli_paint.util.HammingIndex;
+import org.aadi.ghibli_paint.util.LruCache;
+import org.aadi.ghibli_paint.util.PerceptualHash;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Near-duplicate lookups over the perceptual hashes written by {@link PerceptualHashService}.
+ * Each user's hashes are loaded into a {@link HammingIndex} on first use and kept in an LRU of
+ * recently active users; freshly fingerprinted images are added to a loaded index in place.
+ * {@link HammingIndex} cannot remove entries, so deleting images drops the owner's index and the
+ * next query reloads it. Rows deleted while a query runs are skipped when its results are
+ * resolved against the gallery.
+ */
+@Service
+@RequiredArgsConstructor
+public class SimilarImageService {
+
+    @Value("${app.similarity.radius:10}")
+    private int defaultRadius;
+
+    @Value("${app.similarity.max-radius:16}")
+    private int maxRadius;
+
+    @Value("${app.similarity.max-results:50}")
+    private int maxResults;
+
+    @Value("${app.similarity.cached-users:1000}")
+    private int cachedUsers;
+
+    private final GeneratedImageRepository generatedImageRepository;
+    private final UserService userService;
+    private final MeterRegistry meterRegistry;
+
+    // Indexes being loaded, with the adds and deletes that arrived meanwhile (guarded by the Load itself)
+    private final Map<Long, Load> loading = new ConcurrentHashMap<>();
+
+    private LruCache<Long, HammingIndex> indexes;
+    private Timer queries;
+    private Timer loads;
+
+    private static final class Load {
+        private final CompletableFuture<HammingIndex> done = new CompletableFuture<>();
+        private final List<ImageHashRef> adds = new ArrayList<>();
+        // Rows were deleted after the load may have read them, so its index must not be cached
+        private boolean stale;
+    }
+
+    @PostConstruct
+    void init() {
+        indexes = new LruCache<>(cachedUsers);
+        queries = Timer.builder("image.similarity.query").register(meterRegistry);
+        loads = Timer.builder("image.similarity.index.load").register(meterRegistry);
+        Gauge.builder("image.similarity.index.users", this, service -> service.indexes.size())
+                .register(meterRegistry);
+    }
+
+    /**
+     * The current user's images within {@code radius} bits of the given one, nearest first, the
+     * image itself excluded. Empty while the image has not been fingerprinted yet.
+     */
+    public List<SimilarImage> findSimilar(Long imageId, Integer radius, Integer limit) {
+        int maxDistance = radius == null ? defaultRadius : radius;
+        if (maxDistance < 0 || maxDistance > maxRadius) {
+            throw new IllegalArgumentException("radius must be between 0 and " + maxRadius);
+        }
+        int resultLimit = limit == null ? maxResults : Math.max(1, Math.min(limit, maxResults));
+        Long userId = userService.getCurrentUserId();
+        GeneratedImage image = generatedImageRepository.findByIdAndUserId(imageId, userId)
+                .orElseThrow(() -> new RuntimeException("Image not found"));
+        if (image.getPerceptualHash() == null) {
+            return List.of();
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        // An image can be in the index twice if it was fingerprinted while the index loaded
+        Map<Long, Integer> distances = new HashMap<>();
+        for (HammingIndex.Match match : indexFor(userId).within(image.getPerceptualHash(), maxDistance)) {
+            if (match.id() != imageId) {
+                distances.merge(match.id(), match.distance(), Math::min);
+            }
+        }
+        List<Long> nearest = distances.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())))
+                .map(Map.Entry::getKey)
+                .toList();
+        sample.stop(queries);
+
+        // Candidates deleted since the index loaded resolve to nothing, so fetch past the limit and
+        // keep going until it is filled
+        List<SimilarImage> similar = new ArrayList<>(Math.min(resultLimit, nearest.size()));
+        int fetch = 2 * resultLimit;
+        for (int from = 0; from < nearest.size() && similar.size() < resultLimit; from += fetch) {
+            List<Long> candidates = nearest.subList(from, Math.min(from + fetch, nearest.size()));
+            Map<Long, GalleryItem> items = generatedImageRepository.findGalleryItems(userId, candidates).stream()
+                    .collect(Collectors.toMap(GalleryItem::getId, Function.identity()));
+            candidates.stream()
+                    .filter(items::containsKey)
+                    .limit(resultLimit - similar.size())
+                    .forEach(id -> similar.add(new SimilarImage(items.get(id), distances.get(id))));
+        }
+        return similar;
+    }
+
+    /**
+     * Drops items within the default radius of a newer item on the same page. Only the page is
+     * compared, so a near-duplicate of something on an earlier page still shows.
+     */
+    public List<GalleryItem> withoutNearDuplicates(List<GalleryItem> items) {
+        List<GalleryItem> kept = new ArrayList<>(items.size());
+        for (GalleryItem item : items) {
+            if (item.getPerceptualHash() == null || kept.stream().noneMatch(other -> other.getPerceptualHash() != null
+                    && PerceptualHash.distance(item.getPerceptualHash(), other.getPerceptualHash()) <= defaultRadius)) {
+                kept.add(item);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Records a freshly written hash in the user's index, if it is loaded or loading. Otherwise
+     * there is nothing to do: the next load reads it from the database.
+     */
+    public void add(Long userId, Long imageId, long hash) {
+        HammingIndex index = indexes.get(userId);
+        if (index == null) {
+            Load load = loading.get(userId);
+            if (load == null) {
+                // A load that finished in between has already cached its index
+                index = indexes.get(userId);
+            } else {
+                synchronized (load) {
+                    index = indexes.get(userId);
+                    if (index == null) {
+                        load.adds.add(new ImageHashRef(imageId, hash));
+                        return;
+                    }
+                }
+            }
+        }
+        if (index != null) {
+            index.add(hash, imageId);
+        }
+    }
+
+    /**
+     * Drops the indexes that may still hold the deleted rows: the owner's, or every one when the
+     * owners are not known. Runs after the deletion committed, so a later load cannot see the rows;
+     * a load already under way may have, and is kept out of the cache.
+     */
+    @EventListener
+    public void onImagesDeleted(ImageDeletionService.ImagesDeleted event) {
+        if (event.userId() == null) {
+            loading.values().forEach(SimilarImageService::markStale);
+            indexes.clear();
+        } else {
+            Load load = loading.get(event.userId());
+            if (load != null) {
+                markStale(load);
+            }
+            indexes.remove(event.userId());
+        }
+    }
+
+    private static void markStale(Load load) {
+        synchronized (load) {
+            load.stale = true;
+        }
+    }
+
+    private HammingIndex indexFor(Long userId) {
+        HammingIndex index = indexes.get(userId);
+        if (index != null) {
+            return index;
+        }
+        Load load = new Load();
+        Load existing = loading.putIfAbsent(userId, load);
+        if (existing != null) {
+            return existing.done.join();
+        }
+        try {
+            List<ImageHashRef> hashes = loads.record(() -> generatedImageRepository.findHashesByUserId(userId));
+            HammingIndex loaded = new HammingIndex(hashes.size());
+            loaded.addAll(hashes.stream().mapToLong(ImageHashRef::getPerceptualHash).toArray(),
+                    hashes.stream().mapToLong(ImageHashRef::getId).toArray());
+            synchronized (load) {
+                // The query may have run before these were committed
+                load.adds.forEach(ref -> loaded.add(ref.getPerceptualHash(), ref.getId()));
+                if (!load.stale) {
+                    indexes.put(userId, loaded);
+                }
+            }
+            load.done.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            load.done.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(userId, load);
+        }
+    }
+}
@@ -1,228 +1,455 @@
 package org.aadi.ghibli_paint.service;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.dto.BatchItemResult;
+import org.aadi.ghibli_paint.dto.GenerationJob;
+import org.aadi.ghibli_paint.dto.StoredImage;
 import org.aadi.ghibli_paint.entity.GeneratedImage;
+import org.aadi.ghibli_paint.entity.GenerationCacheEntry;
 import org.aadi.ghibli_paint.entity.User;
 import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
+import org.aadi.ghibli_paint.util.LogSampler;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClientRequest;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class StabilityAIService {
 
-    @Value("${stability.api.key}")
-    private String apiKey;
-
-    @Value("${stability.api.url}")
-    private String apiUrl;
-
     @Value("${app.base-url:http://localhost:8080}")
     private String baseUrl;
 
+    @Value("${stability.client.max-concurrent-requests:50}")
+    private int maxConcurrentRequests;
+
+    @Value("${stability.client.permit-wait-ms:10000}")
+    private long permitWaitMs;
+
+    @Value("${generation.reactive.max-in-flight:1000}")
+    private int maxReactiveInFlight;
+
+    @Value("${generation.reactive.db-threads:10}")
+    private int persistenceThreads;
+
+    @Value("${generation.reactive.db-queue-capacity:10000}")
+    private int persistenceQueueCapacity;
+
+    @Value("${generation.jobs.timeout-seconds:120}")
+    private long timeoutSeconds;
+
+    @Value("${generation.batch.max-concurrency:8}")
+    private int maxBatchConcurrency;
+
+    @Value("${generation.batch.persist-batch-size:25}")
+    private int persistBatchSize;
+
+    @Value("${generation.batch.persist-flush-ms:250}")
+    private long persistFlushMs;
+
+    @Value("${app.logging.sample-rate:0.01}")
+    private double logSampleRate;
+
+    private final WebClient stabilityWebClient;
     private final GeneratedImageRepository generatedImageRepository;
+    private final ImageStorageService imageStorageService;
+    private final GenerationCacheService generationCacheService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final PerceptualHashService perceptualHashService;
+    private final ImageDeletionService imageDeletionService;
     private final UserService userService;
+    private final StabilityResilienceService stabilityResilienceService;
+    private final MeterRegistry meterRegistry;
 
-    private static final String IMAGE_STORAGE_PATH = "generated-images/";
+    // Caps concurrent upstream calls independently of how many threads (virtual or not) are generating
+    private Semaphore upstreamPermits;
 
-    public GeneratedImage generateImageFromText(String prompt) throws IOException {
-        User currentUser = userService.getCurrentUser();
+    // Reactive path: JPA and file hashing run here, sized to the connection pool rather than the event loop
+    private Scheduler persistenceScheduler;
+    private final AtomicInteger reactiveInFlight = new AtomicInteger();
 
-        WebClient webClient = WebClient.builder()
-                .baseUrl(apiUrl)
-                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
-                .defaultHeader(HttpHeaders.ACCEPT, "image/*")  // As per docs curl
-                .build();
+    // Bytes received per endpoint, registered on first use
+    private final Map<String, DistributionSummary> received = new ConcurrentHashMap<>();
 
-        String enhancedPrompt = "Studio Ghibli style, anime, " + prompt;
+    private LogSampler logSampler;
+    private Timer singleSave;
+    private Timer batchSave;
 
-        MultipartBodyBuilder builder = new MultipartBodyBuilder();
-        builder.part("prompt", enhancedPrompt);
-        builder.part("aspect_ratio", "1:1");
-        builder.part("output_format", "png");
-        builder.part("seed", 42);
-
-        log.info("Sending multipart request to Stability AI Core with prompt: {}", enhancedPrompt);
+    private record CacheProbe(String cacheKey, GenerationCacheEntry hit) {
+    }
 
-        try {
-            byte[] imageBytes = webClient.post()
-                    .uri("/generate/core")
-                    .contentType(MediaType.MULTIPART_FORM_DATA)
-                    .body(BodyInserters.fromMultipartData(builder.build()))
-                    .retrieve()
-                    .bodyToFlux(DataBuffer.class)
-                    .flatMap(dataBuffer -> {
-                        byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                        dataBuffer.read(bytes);
-                        DataBufferUtils.release(dataBuffer);
-                        return Flux.just(bytes);
-                    })
-                    .reduce((bytes1, bytes2) -> {
-                        byte[] combined = new byte[bytes1.length + bytes2.length];
-                        System.arraycopy(bytes1, 0, combined, 0, bytes1.length);
-                        System.arraycopy(bytes2, 0, combined, bytes1.length, bytes2.length);
-                        return combined;
-                    })
-                    .block();
+    // A batch item whose blob is stored (fresh or from cache) but whose row is not yet written
+    private record PendingItem(int index, String prompt, String cacheKey, StoredImage stored, boolean fresh,
+                               String error) {
+    }
 
-            if (imageBytes == null || imageBytes.length == 0) {
-                throw new RuntimeException("No image data returned from Stability AI");
-            }
+    @PostConstruct
+    void init() {
+        upstreamPermits = new Semaphore(maxConcurrentRequests, true);
+        persistenceScheduler = Schedulers.newBoundedElastic(persistenceThreads, persistenceQueueCapacity,
+                "generation-persistence");
+        logSampler = new LogSampler(logSampleRate);
+        singleSave = Timer.builder("generation.db.save").tag("mode", "single").register(meterRegistry);
+        batchSave = Timer.builder("generation.db.save").tag("mode", "batch").register(meterRegistry);
+        Gauge.builder("generation.in.flight", reactiveInFlight, AtomicInteger::get)
+                .tag("mode", "reactive")
+                .register(meterRegistry);
+        Gauge.builder("stability.upstream.permits.in.use", upstreamPermits,
+                        permits -> maxConcurrentRequests - permits.availablePermits())
+                .register(meterRegistry);
+    }
 
-            log.info("Received image bytes: {} bytes", imageBytes.length);
+    @PreDestroy
+    void stop() {
+        persistenceScheduler.dispose();
+    }
 
-            String filename = UUID.randomUUID().toString() + ".png";
-            String imagePath = saveImage(imageBytes, filename);
+    public GeneratedImage generateImageFromText(User currentUser, String prompt) throws IOException {
+        SortedMap<String, String> parameters = textToImageParameters(prompt);
+        return generate(currentUser, prompt, "text-to-image", "/generate/core", parameters, null);
+    }
 
-            GeneratedImage generatedImage = new GeneratedImage();
-            generatedImage.setUser(currentUser);
-            generatedImage.setPrompt(prompt);
-            generatedImage.setImageUrl(imagePath);
-            generatedImage.setImageType("text-to-image");
-            generatedImage.setOriginalFilename(filename);
-            generatedImage.setFileSize((long) imageBytes.length);
-            generatedImage.setWidth(1024);
-            generatedImage.setHeight(1024);
+    public GeneratedImage generateImageFromImage(User currentUser, String prompt, Resource image) throws IOException {
+        SortedMap<String, String> parameters = imageToImageParameters(prompt);
+        // Use SD3 endpoint for image-to-image
+        return generate(currentUser, prompt, "image-to-image", "/generate/sd3", parameters, image);
+    }
 
-            return generatedImageRepository.save(generatedImage);
-        } catch (org.springframework.web.reactive.function.client.WebClientResponseException ex) {
-            String errorBody = ex.getResponseBodyAsString();
-            log.error("Stability AI HTTP error {}: {}", ex.getStatusCode(), errorBody);
-            throw new RuntimeException("Stability AI request failed: " + errorBody, ex);
-        } catch (Exception ex) {
-            log.error("Unexpected error during Stability AI generation: {}", ex.getMessage(), ex);
-            throw new RuntimeException("Failed to generate image from text", ex);
-        }
+    /**
+     * Non-blocking text-to-image: the upstream body streams to disk on the event loop and only
+     * the JPA work touches a thread, on the bounded persistence scheduler. The caller is resolved
+     * here, on the request thread, because the security context does not follow the Mono.
+     */
+    public Mono<GeneratedImage> generateImageFromTextReactive(String prompt) {
+        User currentUser = userService.getCurrentUserReference();
+        return generateReactive(currentUser, prompt, "text-to-image", "/generate/core",
+                textToImageParameters(prompt), null);
     }
 
-    public GeneratedImage generateImageFromImage(String prompt, MultipartFile imageFile) throws IOException {
-        User currentUser = userService.getCurrentUser();
+    /**
+     * Non-blocking image-to-image. The input should be a file-backed resource so the upload is
+     * read from disk asynchronously rather than by the event loop.
+     */
+    public Mono<GeneratedImage> generateImageFromImageReactive(String prompt, Resource image) {
+        User currentUser = userService.getCurrentUserReference();
+        return generateReactive(currentUser, prompt, "image-to-image", "/generate/sd3",
+                imageToImageParameters(prompt), image);
+    }
 
-        WebClient webClient = WebClient.builder()
-                .baseUrl(apiUrl)
-                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
-                .defaultHeader(HttpHeaders.ACCEPT, "image/*")  // As per docs curl
-                .build();
+    /**
+     * Fans text-to-image prompts out to Stability AI, at most {@code concurrency} at a time, and
+     * emits one result per prompt in completion order. Rows are not inserted one by one: finished
+     * items are buffered briefly and written with a single saveAll per chunk, which Hibernate sends
+     * as one JDBC batch. A failed prompt yields a FAILED item and does not stop the rest.
+     */
+    public Flux<BatchItemResult> generateBatchFromText(List<String> prompts, Integer concurrency) {
+        User currentUser = userService.getCurrentUserReference();
+        int parallelism = Math.max(1, Math.min(concurrency != null ? concurrency : maxBatchConcurrency,
+                maxBatchConcurrency));
+
+        // Admitted up front so an overloaded server can still answer 429 before the stream starts
+        if (reactiveInFlight.addAndGet(prompts.size()) > maxReactiveInFlight) {
+            reactiveInFlight.addAndGet(-prompts.size());
+            throw new RejectedExecutionException("Too many reactive generations in flight");
+        }
+        return Flux.range(0, prompts.size())
+                .flatMap(index -> prepare(index, prompts.get(index)), parallelism)
+                // Fair backpressure: a timed flush must wait for concatMap to ask rather than overflow
+                .bufferTimeout(persistBatchSize, Duration.ofMillis(persistFlushMs), true)
+                .concatMap(chunk -> Mono.fromCallable(() -> persistChunk(currentUser, chunk))
+                        .subscribeOn(persistenceScheduler)
+                        .flatMapIterable(results -> results))
+                .doFinally(signal -> reactiveInFlight.addAndGet(-prompts.size()));
+    }
 
-        String enhancedPrompt = "Studio Ghibli style, anime, " + prompt;
+    @Transactional(readOnly = true)
+    public GeneratedImage getUserImage(Long imageId) {
+        Long currentUserId = userService.getCurrentUserId();
+        return generatedImageRepository.findByIdAndUserId(imageId, currentUserId)
+                .orElseThrow(() -> new RuntimeException("Image not found"));
+    }
 
-        MultipartBodyBuilder builder = new MultipartBodyBuilder();
-        builder.part("prompt", enhancedPrompt);
-        builder.part("image", imageFile.getResource());  // init_image -> image
-        builder.part("strength", "0.35");  // image_strength -> strength
-        // Note: aspect_ratio is not allowed when mode is 'image-to-image'
-        builder.part("output_format", "png");
-        builder.part("seed", 42);
-        builder.part("mode", "image-to-image");  // Required for SD3 image-to-image
+    public void deleteImage(Long imageId) {
+        if (deleteImages(List.of(imageId)) == 0) {
+            throw new RuntimeException("Image not found");
+        }
+    }
 
-        log.info("Sending image-to-image multipart request to Stability AI SD3 with prompt: {}", enhancedPrompt);
+    /**
+     * Deletes the caller's images among {@code imageIds}; files are removed asynchronously once
+     * nothing else references them. Returns how many rows were deleted.
+     */
+    public int deleteImages(Collection<Long> imageIds) {
+        return imageDeletionService.deleteOwned(userService.getCurrentUserId(), imageIds);
+    }
 
+    private GeneratedImage generate(User currentUser, String prompt, String imageType, String endpoint,
+                                    SortedMap<String, String> parameters, Resource image) {
         try {
-            byte[] imageBytes = webClient.post()
-                    .uri("/generate/sd3")  // Use SD3 endpoint for image-to-image
-                    .contentType(MediaType.MULTIPART_FORM_DATA)
-                    .body(BodyInserters.fromMultipartData(builder.build()))
-                    .retrieve()
-                    .bodyToFlux(DataBuffer.class)
-                    .flatMap(dataBuffer -> {
-                        byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                        dataBuffer.read(bytes);
-                        DataBufferUtils.release(dataBuffer);
-                        return Flux.just(bytes);
-                    })
-                    .reduce((bytes1, bytes2) -> {
-                        byte[] combined = new byte[bytes1.length + bytes2.length];
-                        System.arraycopy(bytes1, 0, combined, 0, bytes1.length);
-                        System.arraycopy(bytes2, 0, combined, bytes1.length, bytes2.length);
-                        return combined;
-                    })
-                    .block();
+            String cacheKey = cacheKeyFor(endpoint, parameters, image);
 
-            if (imageBytes == null || imageBytes.length == 0) {
-                throw new RuntimeException("No image data returned from Stability AI");
+            Optional<GenerationCacheEntry> cached = generationCacheService.lookup(cacheKey);
+            if (cached.isPresent()) {
+                GenerationCacheEntry entry = cached.get();
+                logCacheHit(imageType, entry);
+                return save(currentUser, prompt, imageType, storedFor(entry));
             }
 
-            log.info("Received image bytes: {} bytes", imageBytes.length);
-
-            String filename = UUID.randomUUID().toString() + ".png";
-            String imagePath = saveImage(imageBytes, filename);
-
-            GeneratedImage generatedImage = new GeneratedImage();
-            generatedImage.setUser(currentUser);
-            generatedImage.setPrompt(prompt);
-            generatedImage.setImageUrl(imagePath);
-            generatedImage.setImageType("image-to-image");
-            generatedImage.setOriginalFilename(filename);
-            generatedImage.setFileSize((long) imageBytes.length);
-            generatedImage.setWidth(1024);
-            generatedImage.setHeight(1024);
+            if (!upstreamPermits.tryAcquire(permitWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("Too many concurrent Stability AI requests");
+            }
+            StoredImage stored;
+            try {
+                stored = fetch(endpoint, parameters, image).block();
+            } finally {
+                upstreamPermits.release();
+            }
 
-            return generatedImageRepository.save(generatedImage);
-        } catch (org.springframework.web.reactive.function.client.WebClientResponseException ex) {
+            return saveFresh(currentUser, prompt, imageType, cacheKey, stored);
+        } catch (UpstreamUnavailableException ex) {
+            log.warn("Failing fast: {}", ex.getMessage());
+            throw ex;
+        } catch (WebClientResponseException ex) {
             String errorBody = ex.getResponseBodyAsString();
             log.error("Stability AI HTTP error {}: {}", ex.getStatusCode(), errorBody);
             throw new RuntimeException("Stability AI request failed: " + errorBody, ex);
         } catch (Exception ex) {
-            log.error("Unexpected error during Stability AI image-to-image generation: {}", ex.getMessage(), ex);
-            throw new RuntimeException("Failed to generate image from image", ex);
+            log.error("Unexpected error during Stability AI {} generation: {}", imageType, ex.getMessage(), ex);
+            throw new RuntimeException("Failed to generate image (" + imageType + ")", ex);
         }
     }
 
-    @Transactional(readOnly = true)
-    public List<GeneratedImage> getUserImages() {
-        User currentUser = userService.getCurrentUser();
-        return generatedImageRepository.findByUserOrderByCreatedAtDesc(currentUser);
+    private Mono<GeneratedImage> generateReactive(User currentUser, String prompt, String imageType, String endpoint,
+                                                  SortedMap<String, String> parameters, Resource image) {
+        return Mono.defer(() -> {
+            if (reactiveInFlight.incrementAndGet() > maxReactiveInFlight) {
+                reactiveInFlight.decrementAndGet();
+                return Mono.error(new RejectedExecutionException("Too many reactive generations in flight"));
+            }
+            return Mono.fromCallable(() -> {
+                        String cacheKey = cacheKeyFor(endpoint, parameters, image);
+                        return new CacheProbe(cacheKey, generationCacheService.lookup(cacheKey).orElse(null));
+                    })
+                    .subscribeOn(persistenceScheduler)
+                    .flatMap(probe -> {
+                        if (probe.hit() != null) {
+                            GenerationCacheEntry entry = probe.hit();
+                            logCacheHit(imageType, entry);
+                            return Mono.fromCallable(() -> save(currentUser, prompt, imageType, storedFor(entry)))
+                                    .subscribeOn(persistenceScheduler);
+                        }
+                        return fetch(endpoint, parameters, image)
+                                // Saving hops back to the persistence scheduler; the event loop never runs JPA
+                                .publishOn(persistenceScheduler)
+                                .map(stored -> saveFresh(currentUser, prompt, imageType, probe.cacheKey(), stored));
+                    })
+                    .timeout(Duration.ofSeconds(timeoutSeconds))
+                    .onErrorMap(WebClientResponseException.class, ex -> {
+                        log.error("Stability AI HTTP error {}: {}", ex.getStatusCode(), ex.getResponseBodyAsString());
+                        return new RuntimeException("Stability AI request failed: " + ex.getResponseBodyAsString(), ex);
+                    })
+                    .doFinally(signal -> reactiveInFlight.decrementAndGet());
+        });
     }
 
-    public void deleteImage(Long imageId) {
-        User currentUser = userService.getCurrentUser();
-        GeneratedImage image = generatedImageRepository.findById(imageId)
-                .orElseThrow(() -> new RuntimeException("Image not found"));
+    private Mono<PendingItem> prepare(int index, String prompt) {
+        SortedMap<String, String> parameters = textToImageParameters(prompt);
+        return Mono.fromCallable(() -> {
+                    String cacheKey = cacheKeyFor("/generate/core", parameters, null);
+                    return new CacheProbe(cacheKey, generationCacheService.lookup(cacheKey).orElse(null));
+                })
+                .subscribeOn(persistenceScheduler)
+                .flatMap(probe -> {
+                    GenerationCacheEntry entry = probe.hit();
+                    if (entry != null) {
+                        return Mono.just(new PendingItem(index, prompt, probe.cacheKey(), storedFor(entry),
+                                false, null));
+                    }
+                    return fetch("/generate/core", parameters, null)
+                            .timeout(Duration.ofSeconds(timeoutSeconds))
+                            .map(stored -> new PendingItem(index, prompt, probe.cacheKey(), stored, true, null));
+                })
+                .onErrorResume(ex -> {
+                    String message = ex instanceof WebClientResponseException response
+                            ? "Stability AI request failed: " + response.getResponseBodyAsString()
+                            : ex.getMessage();
+                    log.error("Batch item {} failed: {}", index, message);
+                    return Mono.just(new PendingItem(index, prompt, null, null, false, message));
+                });
+    }
 
-        if (!image.getUser().getId().equals(currentUser.getId())) {
-            throw new RuntimeException("Unauthorized to delete this image");
+    private List<BatchItemResult> persistChunk(User currentUser, List<PendingItem> chunk) {
+        List<PendingItem> stored = chunk.stream().filter(item -> item.stored() != null).toList();
+        List<GeneratedImage> rows = new ArrayList<>(stored.size());
+        for (PendingItem item : stored) {
+            rows.add(newImage(currentUser, item.prompt(), "text-to-image", item.stored()));
+        }
+        List<GeneratedImage> saved = batchSave.record(() -> generatedImageRepository.saveAll(rows));
+        perceptualHashService.schedule(saved);
+
+        List<BatchItemResult> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < stored.size(); i++) {
+            PendingItem item = stored.get(i);
+            if (item.fresh()) {
+                generationCacheService.record(item.cacheKey(), item.stored());
+                imageDerivativeService.scheduleDerivatives(item.stored().getFilename());
+            }
+            results.add(new BatchItemResult(item.index(), item.prompt(), GenerationJob.Status.SUCCEEDED,
+                    saved.get(i), null));
         }
+        chunk.stream()
+                .filter(item -> item.stored() == null)
+                .forEach(item -> results.add(new BatchItemResult(item.index(), item.prompt(),
+                        GenerationJob.Status.FAILED, null, item.error())));
+        return results;
+    }
 
-        try {
-            // Extract filename from URL (e.g., "http://localhost:8080/api/images/serve/uuid.png" -> "uuid.png")
-            String filename = image.getImageUrl().substring(image.getImageUrl().lastIndexOf('/') + 1);
-            Path path = Paths.get(IMAGE_STORAGE_PATH).resolve(filename);
-            Files.deleteIfExists(path);
-        } catch (IOException e) {
-            log.error("Error deleting image file", e);
+    /**
+     * Streams the upstream response straight into storage. The file writes are demand-driven,
+     * so a slow disk throttles reads from the upstream socket instead of buffering on heap. Only
+     * the exchange and the staging write are guarded: the hand-off to the store runs after, so a
+     * slow store neither times out nor retries the paid call, and its failures say nothing about
+     * upstream health.
+     */
+    private Mono<StoredImage> fetch(String endpoint, SortedMap<String, String> parameters, Resource image) {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        parameters.forEach(builder::part);
+        if (image != null) {
+            builder.part("image", image);  // init_image -> image
         }
 
-        generatedImageRepository.delete(image);
+        // Each retry re-subscribes, rebuilding the request and streaming into a fresh temp file
+        return stabilityResilienceService.guard(endpoint, stabilityWebClient.post()
+                        .uri(endpoint)
+                        // Per endpoint: sd3 is allowed longer than core
+                        .httpRequest(request -> ((HttpClientRequest) request.getNativeRequest())
+                                .responseTimeout(stabilityResilienceService.timeoutFor(endpoint)))
+                        .contentType(MediaType.MULTIPART_FORM_DATA)
+                        .body(BodyInserters.fromMultipartData(builder.build()))
+                        .retrieve()
+                        .bodyToFlux(DataBuffer.class)
+                        .as(body -> imageStorageService.stage(body, "png")))
+                .flatMap(imageStorageService::commit)
+                .doOnNext(stored -> {
+                    receivedFor(endpoint).record(stored.getSize());
+                    if (logSampler.sample()) {
+                        log.info("event=upstream_stored endpoint={} file={} bytes={} prompt_chars={}",
+                                endpoint, stored.getFilename(), stored.getSize(), parameters.get("prompt").length());
+                    }
+                });
+    }
+
+    private DistributionSummary receivedFor(String endpoint) {
+        return received.computeIfAbsent(endpoint, key -> DistributionSummary.builder("stability.upstream.received")
+                .baseUnit("bytes")
+                .tag("endpoint", key)
+                .register(meterRegistry));
+    }
+
+    private static StoredImage storedFor(GenerationCacheEntry entry) {
+        return new StoredImage(entry.getStorageKey(), entry.getFileSize(), entry.getContentHash(), entry.getWidth(),
+                entry.getHeight());
     }
 
-    private String saveImage(byte[] imageBytes, String filename) throws IOException {
-        Path directory = Paths.get(IMAGE_STORAGE_PATH);
-        if (!Files.exists(directory)) {
-            Files.createDirectories(directory);
+    private void logCacheHit(String imageType, GenerationCacheEntry entry) {
+        if (logSampler.sample()) {
+            log.info("event=cache_hit type={} file={}", imageType, entry.getStorageKey());
         }
+    }
 
-        Path filePath = directory.resolve(filename);
-        Files.write(filePath, imageBytes);
+    private String cacheKeyFor(String endpoint, SortedMap<String, String> parameters, Resource image) throws IOException {
+        SortedMap<String, String> keyParameters = new TreeMap<>(parameters);
+        if (image != null) {
+            try (InputStream in = image.getInputStream()) {
+                keyParameters.put("image_sha256", GenerationCacheService.sha256Hex(in));
+            }
+        }
+        return generationCacheService.cacheKey(endpoint, keyParameters);
+    }
+
+    private GeneratedImage saveFresh(User currentUser, String prompt, String imageType, String cacheKey,
+                                     StoredImage stored) {
+        GeneratedImage generatedImage = save(currentUser, prompt, imageType, stored);
+        generationCacheService.record(cacheKey, stored);
+        imageDerivativeService.scheduleDerivatives(stored.getFilename());
+        return generatedImage;
+    }
+
+    private static SortedMap<String, String> textToImageParameters(String prompt) {
+        SortedMap<String, String> parameters = new TreeMap<>();
+        parameters.put("prompt", "Studio Ghibli style, anime, " + prompt);
+        parameters.put("aspect_ratio", "1:1");
+        parameters.put("output_format", "png");
+        parameters.put("seed", "42");
+        return parameters;
+    }
+
+    private static SortedMap<String, String> imageToImageParameters(String prompt) {
+        SortedMap<String, String> parameters = new TreeMap<>();
+        parameters.put("prompt", "Studio Ghibli style, anime, " + prompt);
+        parameters.put("strength", "0.35");  // image_strength -> strength
+        // Note: aspect_ratio is not allowed when mode is 'image-to-image'
+        parameters.put("output_format", "png");
+        parameters.put("seed", "42");
+        parameters.put("mode", "image-to-image");  // Required for SD3 image-to-image
+        return parameters;
+    }
+
+    private GeneratedImage save(User currentUser, String prompt, String imageType, StoredImage stored) {
+        GeneratedImage image = newImage(currentUser, prompt, imageType, stored);
+        GeneratedImage saved = singleSave.record(() -> generatedImageRepository.save(image));
+        perceptualHashService.schedule(List.of(saved));
+        return saved;
+    }
 
-        return baseUrl + "/api/images/serve/" + filename;
+    private GeneratedImage newImage(User currentUser, String prompt, String imageType, StoredImage stored) {
+        GeneratedImage generatedImage = new GeneratedImage();
+        generatedImage.setUser(currentUser);
+        generatedImage.setPrompt(prompt);
+        generatedImage.setImageUrl(baseUrl + "/api/images/serve/" + stored.getFilename());
+        generatedImage.setImageType(imageType);
+        generatedImage.setOriginalFilename(stored.getFilename());
+        generatedImage.setStorageKey(stored.getFilename());
+        generatedImage.setContentHash(stored.getSha256());
+        generatedImage.setFileSize(stored.getSize());
+        generatedImage.setWidth(stored.getWidth());
+        generatedImage.setHeight(stored.getHeight());
+        return generatedImage;
     }
-}
\ No newline at end of file
+}
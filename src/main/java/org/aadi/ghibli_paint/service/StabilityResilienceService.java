@@ -0,0 +1,219 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.util.CircuitBreaker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Wraps calls to Stability AI with a per-endpoint latency budget, a circuit breaker and bounded
+ * retries. Only transient failures (429, 5xx gateway errors, timeouts, connection errors) are
+ * retried, with jittered exponential backoff, and only they count against the breaker; other
+ * 4xx responses are the caller's problem and say nothing about upstream health.
+ *
+ * <p>Every attempt, its retries and their backoff must fit inside the generation timeout, or the
+ * last attempt would always be cut off by the job watchdog; startup fails if they do not.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StabilityResilienceService {
+
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(429, 500, 502, 503, 504);
+
+    @Value("${stability.resilience.core.timeout-seconds:30}")
+    private long coreTimeoutSeconds;
+
+    @Value("${stability.resilience.sd3.timeout-seconds:36}")
+    private long sd3TimeoutSeconds;
+
+    @Value("${stability.resilience.max-retries:2}")
+    private int maxRetries;
+
+    @Value("${stability.resilience.backoff-ms:500}")
+    private long backoffMs;
+
+    @Value("${stability.resilience.max-backoff-ms:4000}")
+    private long maxBackoffMs;
+
+    @Value("${stability.resilience.jitter:0.5}")
+    private double jitter;
+
+    @Value("${stability.resilience.breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${stability.resilience.breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${stability.resilience.breaker.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${stability.resilience.breaker.open-seconds:30}")
+    private long openSeconds;
+
+    @Value("${stability.resilience.breaker.half-open-probes:3}")
+    private int halfOpenProbes;
+
+    @Value("${generation.jobs.timeout-seconds:120}")
+    private long generationTimeoutSeconds;
+
+    @Value("${spring.mvc.async.request-timeout:130s}")
+    private Duration asyncRequestTimeout;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        breakerFor("/generate/core");
+        breakerFor("/generate/sd3");
+        if (Duration.ofSeconds(generationTimeoutSeconds).compareTo(asyncRequestTimeout) >= 0) {
+            throw new IllegalStateException("generation.jobs.timeout-seconds=" + generationTimeoutSeconds
+                    + " must be below spring.mvc.async.request-timeout=" + asyncRequestTimeout);
+        }
+        for (String endpoint : breakers.keySet()) {
+            Duration worstCase = worstCase(timeoutFor(endpoint));
+            if (worstCase.compareTo(Duration.ofSeconds(generationTimeoutSeconds)) > 0) {
+                throw new IllegalStateException("Stability AI " + endpoint + " may take " + worstCase.toSeconds()
+                        + "s over " + (maxRetries + 1) + " attempts, more than generation.jobs.timeout-seconds="
+                        + generationTimeoutSeconds);
+            }
+        }
+    }
+
+    /**
+     * Budget for one attempt at the endpoint; also applied as the HTTP response timeout.
+     */
+    public Duration timeoutFor(String endpoint) {
+        return Duration.ofSeconds("/generate/sd3".equals(endpoint) ? sd3TimeoutSeconds : coreTimeoutSeconds);
+    }
+
+    public <T> Mono<T> guard(String endpoint, Mono<T> call) {
+        CircuitBreaker breaker = breakerFor(endpoint);
+        Duration timeout = timeoutFor(endpoint);
+
+        Mono<T> attempt = Mono.defer(() -> {
+            if (!breaker.tryAcquirePermission()) {
+                counter(endpoint, "rejected").increment();
+                long retryAfter = Math.max(1, (breaker.remainingOpenMillis() + 999) / 1000);
+                return Mono.error(new UpstreamUnavailableException(endpoint, retryAfter));
+            }
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return call
+                    .timeout(timeout)
+                    .doOnSuccess(result -> {
+                        sample.stop(latency(endpoint, "2xx"));
+                        breaker.onSuccess();
+                        counter(endpoint, "success").increment();
+                    })
+                    .doOnError(error -> {
+                        sample.stop(latency(endpoint, statusOf(error)));
+                        if (isTransient(error)) {
+                            breaker.onFailure();
+                            counter(endpoint, "failure").increment();
+                        } else {
+                            breaker.onSuccess();
+                            counter(endpoint, "client_error").increment();
+                        }
+                    })
+                    // Cancelled from outside (client disconnect, job watchdog): says nothing about
+                    // upstream health, so only hand back the probe slot. Our own timeout arrives above
+                    // as a TimeoutException and counts as a failure.
+                    .doOnCancel(() -> {
+                        sample.stop(latency(endpoint, "cancelled"));
+                        breaker.releasePermission();
+                        counter(endpoint, "cancelled").increment();
+                    });
+        });
+
+        return attempt.retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(backoffMs))
+                .maxBackoff(Duration.ofMillis(maxBackoffMs))
+                .jitter(jitter)
+                .filter(StabilityResilienceService::isTransient)
+                .doBeforeRetry(signal -> log.warn("Retrying Stability AI {} (attempt {}): {}", endpoint,
+                        signal.totalRetries() + 2, signal.failure().toString()))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    public CircuitBreaker.State state(String endpoint) {
+        return breakerFor(endpoint).state();
+    }
+
+    /**
+     * Every attempt running into its timeout, with the longest jittered backoff between them.
+     */
+    private Duration worstCase(Duration attemptTimeout) {
+        Duration total = attemptTimeout.multipliedBy(maxRetries + 1L);
+        for (int retry = 0; retry < maxRetries; retry++) {
+            long delay = Math.min(maxBackoffMs, backoffMs << Math.min(retry, 30));
+            total = total.plusMillis((long) (delay * (1 + jitter)));
+        }
+        return total;
+    }
+
+    static boolean isTransient(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            return RETRYABLE_STATUSES.contains(response.getStatusCode().value());
+        }
+        return error instanceof TimeoutException || error instanceof WebClientRequestException;
+    }
+
+    /**
+     * Status tag for a failed attempt: the HTTP status when upstream answered, otherwise the kind
+     * of transport failure. Bounded by the handful of codes Stability AI returns.
+     */
+    private static String statusOf(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            return String.valueOf(response.getStatusCode().value());
+        }
+        if (error instanceof TimeoutException) {
+            return "timeout";
+        }
+        return error instanceof WebClientRequestException ? "io_error" : "error";
+    }
+
+    private CircuitBreaker breakerFor(String endpoint) {
+        return breakers.computeIfAbsent(endpoint, key -> {
+            CircuitBreaker breaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold,
+                    Duration.ofSeconds(openSeconds).toMillis(), halfOpenProbes);
+            Gauge.builder("stability.circuit.state", breaker, b -> b.state().ordinal())
+                    .description("0 = closed, 1 = open, 2 = half-open")
+                    .tag("endpoint", key)
+                    .register(meterRegistry);
+            return breaker;
+        });
+    }
+
+    private Timer latency(String endpoint, String status) {
+        return Timer.builder("stability.upstream.latency")
+                .description("Per-attempt Stability AI latency, including streaming the body to storage")
+                .tag("endpoint", endpoint)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Counter counter(String endpoint, String outcome) {
+        return Counter.builder("stability.calls")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
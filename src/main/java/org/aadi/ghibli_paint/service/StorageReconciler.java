@@ -0,0 +1,333 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aadi.ghibli_paint.dto.ImageKeyRef;
+import org.aadi.ghibli_paint.entity.BlobDeletion;
+import org.aadi.ghibli_paint.entity.ReconcileState;
+import org.aadi.ghibli_paint.repository.BlobDeletionRepository;
+import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
+import org.aadi.ghibli_paint.repository.ReconcileStateRepository;
+import org.aadi.ghibli_paint.util.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds stored files no row points at (orphans, e.g. from a transaction that failed after the
+ * upload) and gallery rows whose file is gone (dangling). Each pass first pages through the store
+ * listing, checking every page against the tables with a few set-based queries, then pages through
+ * generated_images by id, checking each key against the store. One page is handled per tick and
+ * the cursors are checkpointed in reconcile_state, so memory stays bounded and a restart resumes
+ * where the pass left off. Store operations and queries are paced by separate token buckets.
+ *
+ * <p>Findings are appended to a per-pass TSV report. Unless {@code dry-run} is set, orphans older
+ * than the grace period are queued on the blob deletion log (which re-checks references before
+ * deleting) and dangling rows are deleted, up to {@code max-repairs-per-pass}; past that the pass
+ * only reports, as a guard against e.g. a misconfigured bucket making everything look dangling.
+ */
+@Service
+@ConditionalOnProperty(name = "app.reconcile.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class StorageReconciler {
+
+    private static final String STATE = "storage";
+    private static final DateTimeFormatter REPORT_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Value("${app.reconcile.dry-run:true}")
+    private boolean dryRun;
+
+    @Value("${app.reconcile.page-size:500}")
+    private int pageSize;
+
+    @Value("${app.reconcile.io-per-second:200}")
+    private int ioPerSecond;
+
+    @Value("${app.reconcile.db-queries-per-second:20}")
+    private int dbQueriesPerSecond;
+
+    @Value("${app.reconcile.grace-period-minutes:60}")
+    private long gracePeriodMinutes;
+
+    @Value("${app.reconcile.pass-interval-hours:24}")
+    private long passIntervalHours;
+
+    @Value("${app.reconcile.max-repairs-per-pass:1000}")
+    private long maxRepairsPerPass;
+
+    @Value("${app.reconcile.report-dir:reconcile-reports}")
+    private String reportDir;
+
+    private final ImageStorageService imageStorageService;
+    private final GeneratedImageRepository generatedImageRepository;
+    private final GenerationCacheService generationCacheService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final ImageDeletionService imageDeletionService;
+    private final BlobDeletionRepository blobDeletionRepository;
+    private final ReconcileStateRepository reconcileStateRepository;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicLong filesScanned = new AtomicLong();
+    private final AtomicLong rowsScanned = new AtomicLong();
+    private final AtomicLong orphanFiles = new AtomicLong();
+    private final AtomicLong danglingRows = new AtomicLong();
+    private final AtomicLong rowCursor = new AtomicLong();
+
+    private TokenBucket ioBudget;
+    private TokenBucket dbBudget;
+    private Timer filePages;
+    private Timer rowPages;
+    private Counter passes;
+    private Counter queuedOrphans;
+    private Counter deletedRows;
+    private Boolean legacyRows;  // rows without storage_key exist; looked up once per pass
+    private boolean repairBudgetWarned;
+
+    @PostConstruct
+    void init() {
+        // A tenth of a second of burst, so a page is spread out rather than fired all at once
+        ioBudget = new TokenBucket(Math.max(1, ioPerSecond / 10), TimeUnit.SECONDS.toNanos(1) / ioPerSecond,
+                System.nanoTime());
+        dbBudget = new TokenBucket(Math.max(1, dbQueriesPerSecond / 10),
+                TimeUnit.SECONDS.toNanos(1) / dbQueriesPerSecond, System.nanoTime());
+        Gauge.builder("image.reconcile.scanned", filesScanned, AtomicLong::get).tag("side", "files").register(meterRegistry);
+        Gauge.builder("image.reconcile.scanned", rowsScanned, AtomicLong::get).tag("side", "rows").register(meterRegistry);
+        Gauge.builder("image.reconcile.findings", orphanFiles, AtomicLong::get).tag("kind", "orphan_file").register(meterRegistry);
+        Gauge.builder("image.reconcile.findings", danglingRows, AtomicLong::get).tag("kind", "dangling_row").register(meterRegistry);
+        Gauge.builder("image.reconcile.row.cursor", rowCursor, AtomicLong::get).register(meterRegistry);
+        filePages = Timer.builder("image.reconcile.page").tag("side", "files").register(meterRegistry);
+        rowPages = Timer.builder("image.reconcile.page").tag("side", "rows").register(meterRegistry);
+        passes = Counter.builder("image.reconcile.passes").register(meterRegistry);
+        queuedOrphans = Counter.builder("image.reconcile.repairs").tag("kind", "orphan_file").register(meterRegistry);
+        deletedRows = Counter.builder("image.reconcile.repairs").tag("kind", "dangling_row").register(meterRegistry);
+        log.info("Storage reconciler enabled ({})", dryRun ? "dry run" : "repairing");
+    }
+
+    /**
+     * Handles one page of the current pass (or starts/finishes one) and checkpoints.
+     */
+    @Scheduled(fixedDelayString = "${app.reconcile.interval-ms:1000}")
+    public void step() throws IOException, InterruptedException {
+        db(1);
+        ReconcileState state = reconcileStateRepository.findById(STATE).orElseGet(() -> new ReconcileState(STATE));
+        LocalDateTime now = LocalDateTime.now();
+        if (state.getPassStartedAt() == null) {
+            if (state.getNextPassAt() != null && now.isBefore(state.getNextPassAt())) {
+                return;
+            }
+            startPass(state, now);
+        }
+        if (legacyRows == null) {
+            db(1);
+            legacyRows = generatedImageRepository.countByStorageKeyIsNull() > 0;
+        }
+
+        if (!state.isFilesDone()) {
+            long start = System.nanoTime();
+            filesPage(state, now);
+            filePages.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } else if (!state.isRowsDone()) {
+            long start = System.nanoTime();
+            rowsPage(state);
+            rowPages.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } else {
+            finishPass(state, now);
+        }
+        state.setUpdatedAt(LocalDateTime.now());
+        db(1);
+        reconcileStateRepository.save(state);
+        publish(state);
+    }
+
+    private void startPass(ReconcileState state, LocalDateTime now) {
+        state.setPassStartedAt(now);
+        state.setFileCursor(null);
+        state.setFilesDone(false);
+        state.setRowCursor(0);
+        state.setRowsDone(false);
+        state.setFilesScanned(0);
+        state.setRowsScanned(0);
+        state.setOrphanFiles(0);
+        state.setDanglingRows(0);
+        state.setRepairs(0);
+        legacyRows = null;
+        repairBudgetWarned = false;
+        log.info("Storage reconciliation pass started ({})", dryRun ? "dry run" : "repairing");
+    }
+
+    private void filesPage(ReconcileState state, LocalDateTime now) throws IOException, InterruptedException {
+        io(1);
+        ImageStore.Listing page = imageStorageService.list(state.getFileCursor(), pageSize);
+        io(page.keys().size());
+
+        Set<String> unreferenced = new LinkedHashSet<>(page.keys());
+        if (!unreferenced.isEmpty()) {
+            db(1);
+            generatedImageRepository.findReferencedStorageKeys(unreferenced).forEach(unreferenced::remove);
+        }
+        if (!unreferenced.isEmpty() && legacyRows) {
+            db(1);
+            generatedImageRepository.findLegacyReferencedKeys(unreferenced).forEach(unreferenced::remove);
+        }
+        if (!unreferenced.isEmpty()) {
+            db(1);
+            generationCacheService.referencedAmong(unreferenced).forEach(unreferenced::remove);
+        }
+        if (!unreferenced.isEmpty()) {
+            db(1);
+            imageDerivativeService.variantsAmong(unreferenced).forEach(unreferenced::remove);
+        }
+
+        // Files are stored before their row is written, so young unreferenced files may be in flight
+        Instant cutoff = Instant.now().minus(gracePeriodMinutes, ChronoUnit.MINUTES);
+        List<String> orphans = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (String key : unreferenced) {
+            io(1);
+            Optional<ImageStore.Stat> stat = imageStorageService.stat(key);
+            if (stat.isPresent() && stat.get().lastModified().isBefore(cutoff)) {
+                orphans.add(key);
+                lines.add("orphan_file\t" + key + "\t" + stat.get().size());
+            }
+        }
+
+        boolean repair = mayRepair(state, orphans.size());
+        if (repair && !orphans.isEmpty()) {
+            db(1);
+            blobDeletionRepository.saveAll(orphans.stream().map(key -> new BlobDeletion(null, key, now, now, 0)).toList());
+            state.setRepairs(state.getRepairs() + orphans.size());
+            queuedOrphans.increment(orphans.size());
+        }
+        report(state, lines, repair ? "queued" : "reported");
+
+        state.setFilesScanned(state.getFilesScanned() + page.keys().size());
+        state.setOrphanFiles(state.getOrphanFiles() + orphans.size());
+        state.setFileCursor(page.cursor());
+        state.setFilesDone(page.cursor() == null);
+    }
+
+    private void rowsPage(ReconcileState state) throws IOException, InterruptedException {
+        db(1);
+        List<ImageKeyRef> rows = generatedImageRepository.findKeyRefsAfter(state.getRowCursor(),
+                PageRequest.of(0, pageSize));
+
+        // Cached generations share blobs, so each key is checked once per page
+        Map<String, Boolean> present = new HashMap<>();
+        List<Long> dangling = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (ImageKeyRef row : rows) {
+            Boolean exists = present.get(row.getStorageKey());
+            if (exists == null) {
+                io(1);
+                exists = imageStorageService.stat(row.getStorageKey()).isPresent();
+                present.put(row.getStorageKey(), exists);
+            }
+            if (!exists) {
+                dangling.add(row.getId());
+                lines.add("dangling_row\t" + row.getStorageKey() + "\t" + row.getId());
+            }
+        }
+
+        boolean repair = mayRepair(state, dangling.size());
+        if (repair && !dangling.isEmpty()) {
+            db(3);
+            int deleted = imageDeletionService.deleteAll(dangling);
+            state.setRepairs(state.getRepairs() + deleted);
+            deletedRows.increment(deleted);
+        }
+        report(state, lines, repair ? "deleted" : "reported");
+
+        state.setRowsScanned(state.getRowsScanned() + rows.size());
+        state.setDanglingRows(state.getDanglingRows() + dangling.size());
+        if (!rows.isEmpty()) {
+            state.setRowCursor(rows.get(rows.size() - 1).getId());
+        }
+        state.setRowsDone(rows.size() < pageSize);
+    }
+
+    private void finishPass(ReconcileState state, LocalDateTime now) {
+        log.info("Storage reconciliation pass finished: files={} rows={} orphan_files={} dangling_rows={} repairs={} "
+                        + "report={}", state.getFilesScanned(), state.getRowsScanned(), state.getOrphanFiles(),
+                state.getDanglingRows(), state.getRepairs(), reportPath(state));
+        // Totals stay in the row (and the gauges) until the next pass starts
+        state.setPassStartedAt(null);
+        state.setNextPassAt(now.plusHours(passIntervalHours));
+        passes.increment();
+    }
+
+    private boolean mayRepair(ReconcileState state, int findings) {
+        if (dryRun || findings == 0) {
+            return false;
+        }
+        if (state.getRepairs() + findings <= maxRepairsPerPass) {
+            return true;
+        }
+        if (!repairBudgetWarned) {
+            repairBudgetWarned = true;
+            log.warn("Reconciliation repair budget of {} per pass reached; only reporting for the rest of the pass",
+                    maxRepairsPerPass);
+        }
+        return false;
+    }
+
+    private void report(ReconcileState state, List<String> lines, String action) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        Path path = reportPath(state);
+        Files.createDirectories(path.getParent());
+        Files.write(path, lines.stream().map(line -> line + "\t" + action).toList(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private Path reportPath(ReconcileState state) {
+        return Paths.get(reportDir, "reconcile-" + REPORT_NAME.format(state.getPassStartedAt()) + ".tsv");
+    }
+
+    private void publish(ReconcileState state) {
+        filesScanned.set(state.getFilesScanned());
+        rowsScanned.set(state.getRowsScanned());
+        orphanFiles.set(state.getOrphanFiles());
+        danglingRows.set(state.getDanglingRows());
+        rowCursor.set(state.getRowCursor());
+    }
+
+    private void io(int operations) throws InterruptedException {
+        for (int i = 0; i < operations; i++) {
+            ioBudget.acquire();
+        }
+    }
+
+    private void db(int queries) throws InterruptedException {
+        for (int i = 0; i < queries; i++) {
+            dbBudget.acquire();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.aadi.ghibli_paint.service;
+
+import lombok.Getter;
+
+/**
+ * Thrown without calling Stability AI while the circuit breaker for an endpoint is open.
+ */
+@Getter
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public UpstreamUnavailableException(String endpoint, long retryAfterSeconds) {
+        super("Stability AI " + endpoint + " is unavailable, retry in " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
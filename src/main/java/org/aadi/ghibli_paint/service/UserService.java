@@ -3,8 +3,10 @@ package org.aadi.ghibli_paint.service;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.aadi.ghibli_paint.entity.User;
-import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
 import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.security.AuthenticatedUser;
+import org.aadi.ghibli_paint.security.UserDetailsCache;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
@@ -13,7 +15,9 @@ import org.springframework.stereotype.Service;
 public class UserService {
 
     private final UserRepository userRepository;
-    private final GeneratedImageRepository generatedImageRepository;
+    private final ImageDeletionService imageDeletionService;
+    private final UserDetailsCache userDetailsCache;
+    private final AvailabilityIndexService availabilityIndexService;
 
     public User getCurrentUser() {
         String username = SecurityContextHolder.getContext().getAuthentication().getName();
@@ -21,23 +25,67 @@ public class UserService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
 
+    /**
+     * Id of the authenticated caller, read from the security principal without a query.
+     */
+    public Long getCurrentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser user) {
+            return user.getId();
+        }
+        return getCurrentUser().getId();
+    }
+
+    /**
+     * Id-only stand-in for the caller, enough to set as an owning association. Built without the
+     * EntityManager so no connection is taken (and, under open-in-view, held for the whole request).
+     */
+    public User getCurrentUserReference() {
+        User reference = new User();
+        reference.setId(getCurrentUserId());
+        return reference;
+    }
+
     public User getUserById(Long id) {
         return userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
 
     @Transactional
+    public void deactivateAccount(Long userId) {
+        User user = findOwnAccount(userId);
+        user.setIsActive(false);
+        userRepository.save(user);
+        userDetailsCache.invalidate(userId);
+    }
+
+    /**
+     * Deactivates first so the account cannot log in or generate while its gallery is removed in
+     * batches; each batch commits on its own, so a crash part-way leaves a deactivated account
+     * that a retried delete finishes off. The user row itself goes with a bulk statement rather
+     * than {@code delete(user)}, which would cascade through {@code generatedImages} entity by entity.
+     */
     public void deleteAccount(Long userId) {
+        User user = findOwnAccount(userId);
+        user.setIsActive(false);
+        userRepository.save(user);
+        userDetailsCache.invalidate(userId);
+
+        imageDeletionService.deleteAllForUser(userId);
+        userRepository.deleteRowById(userId);
+        userDetailsCache.invalidate(userId);
+        availabilityIndexService.remove(user.getUsername(), user.getEmail());
+    }
+
+    private User findOwnAccount(Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
-        
-        // Verify current user is deleting their own account
+
+        // Verify current user is modifying their own account
         String currentUsername = SecurityContextHolder.getContext().getAuthentication().getName();
         if (!user.getUsername().equals(currentUsername)) {
-            throw new RuntimeException("Unauthorized to delete this account");
+            throw new RuntimeException("Unauthorized to modify this account");
         }
-
-        generatedImageRepository.deleteByUser(user);
-        userRepository.delete(user);
+        return user;
     }
 }
@@ -0,0 +1,159 @@
+package org.aadi.ghibli_paint.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Count-based circuit breaker. While CLOSED it tracks the last {@code windowSize} outcomes and
+ * opens once at least {@code minimumCalls} were seen and the failure rate reaches the threshold.
+ * OPEN rejects every call until {@code openMillis} have passed, then HALF_OPEN lets
+ * {@code probes} calls through: all succeeding closes the breaker, any failure reopens it.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openMillis;
+    private final int probes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final boolean[] outcomes;  // ring buffer, true = failure
+    private int recorded;
+    private int position;
+    private int failures;
+
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int probesIssued;
+    private int probesSucceeded;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openMillis, int probes) {
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+        this.probes = probes;
+        this.outcomes = new boolean[windowSize];
+    }
+
+    /**
+     * Returns false when the call must fail fast. A permitted call must report back through
+     * {@link #onSuccess()} or {@link #onFailure()}, or {@link #releasePermission()} when it was
+     * abandoned without an outcome.
+     */
+    public boolean tryAcquirePermission() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < openMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probesIssued = 0;
+                probesSucceeded = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesIssued >= probes) {
+                    return false;
+                }
+                probesIssued++;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onSuccess() {
+        record(false);
+    }
+
+    public void onFailure() {
+        record(true);
+    }
+
+    /**
+     * For a permitted call that ended without saying anything about the upstream (the caller went
+     * away or gave up): frees its HALF_OPEN probe slot and records nothing.
+     */
+    public void releasePermission() {
+        if (state != State.HALF_OPEN) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && probesIssued > probesSucceeded) {
+                probesIssued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * Milliseconds until an open breaker starts probing again; 0 when not open.
+     */
+    public long remainingOpenMillis() {
+        lock.lock();
+        try {
+            return state == State.OPEN ? Math.max(0, openMillis - (System.currentTimeMillis() - openedAt)) : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(boolean failure) {
+        lock.lock();
+        try {
+            switch (state) {
+                case HALF_OPEN -> {
+                    if (failure) {
+                        open();
+                    } else if (++probesSucceeded >= probes) {
+                        close();
+                    }
+                }
+                case CLOSED -> {
+                    if (recorded == windowSize && outcomes[position]) {
+                        failures--;
+                    }
+                    outcomes[position] = failure;
+                    position = (position + 1) % windowSize;
+                    recorded = Math.min(recorded + 1, windowSize);
+                    if (failure) {
+                        failures++;
+                    }
+                    if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+                        open();
+                    }
+                }
+                case OPEN -> {
+                    // Late result from a call admitted before the breaker opened
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recorded = 0;
+        position = 0;
+        failures = 0;
+    }
+}
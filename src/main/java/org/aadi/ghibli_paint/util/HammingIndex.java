@@ -0,0 +1,230 @@
+package org.aadi.ghibli_paint.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Radius queries over 64-bit hashes under Hamming distance, using multi-index hashing: each
+ * hash is split into four 16-bit chunks, and by the pigeonhole principle anything within
+ * {@code r} bits of the query is within {@code r / 4} bits of it in at least one chunk. A query
+ * therefore only looks at the buckets of one to a few thousand chunk values per table, instead
+ * of every entry.
+ *
+ * <p>Small indexes are scanned linearly; a scan of a few thousand longs is faster than probing
+ * and avoids the tables' fixed 1 MiB. Adds land in an unindexed tail that queries scan, and the
+ * tables are rebuilt once that tail grows past a thirty-second of the indexed part. Very wide
+ * radii probe so many buckets that a scan is cheaper, and fall back to one. Queries share a read
+ * lock and adds take it exclusively. Removal is not supported; callers rebuild instead.
+ */
+public class HammingIndex {
+
+    public record Match(long id, int distance) {
+    }
+
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = 16;
+    private static final int BUCKETS = 1 << CHUNK_BITS;
+    private static final int INDEX_FROM = 16384;
+    // Past 4 bits per chunk the probes outnumber a scan of all but the largest indexes
+    private static final int MAX_CHUNK_RADIUS = 4;
+    // Chunk masks grouped by weight, so probing within s bits walks MASKS[0..s]
+    private static final int[][] MASKS = masksByWeight();
+    // One bucket visit costs about as much as scanning this many entries (HammingIndexBenchmark)
+    private static final int BUCKET_VISIT_COST = 384;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] hashes;
+    private long[] ids;
+    private int size;
+
+    // Entries [0, indexed) are in the tables: bucket b of chunk c is
+    // entries[c][starts[c][b] .. starts[c][b + 1]), with the hashes copied alongside in
+    // bucketHashes so checking a bucket reads it sequentially instead of jumping around hashes
+    private int indexed;
+    private int[][] starts;
+    private int[][] entries;
+    private long[][] bucketHashes;
+
+    public HammingIndex(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        hashes = new long[capacity];
+        ids = new long[capacity];
+    }
+
+    public void add(long hash, long id) {
+        lock.writeLock().lock();
+        try {
+            append(hash, id);
+            reindexIfDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Like {@link #add} for each pair, but rebuilds the tables at most once.
+     */
+    public void addAll(long[] newHashes, long[] newIds) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < newHashes.length; i++) {
+                append(newHashes[i], newIds[i]);
+            }
+            reindexIfDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Every entry within {@code radius} bits of {@code hash}, in no particular order.
+     */
+    public List<Match> within(long hash, int radius) {
+        lock.readLock().lock();
+        try {
+            List<Match> matches = new ArrayList<>();
+            int chunkRadius = radius / CHUNKS;
+            if (indexed == 0 || chunkRadius > MAX_CHUNK_RADIUS || probeCost(chunkRadius) >= indexed) {
+                scan(hash, radius, 0, matches);
+                return matches;
+            }
+            scan(hash, radius, indexed, matches);
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                int query = chunkOf(hash, chunk);
+                int[] chunkStarts = starts[chunk];
+                int[] chunkEntries = entries[chunk];
+                long[] chunkHashes = bucketHashes[chunk];
+                for (int weight = 0; weight <= chunkRadius; weight++) {
+                    for (int mask : MASKS[weight]) {
+                        int bucket = query ^ mask;
+                        for (int i = chunkStarts[bucket]; i < chunkStarts[bucket + 1]; i++) {
+                            long difference = chunkHashes[i] ^ hash;
+                            int distance = Long.bitCount(difference);
+                            // An entry close in several chunks is reported by the first of them only
+                            if (distance <= radius && !nearInEarlierChunk(difference, chunk, chunkRadius)) {
+                                matches.add(new Match(ids[chunkEntries[i]], distance));
+                            }
+                        }
+                    }
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void append(long hash, long id) {
+        if (size == hashes.length) {
+            int capacity = size + (size >> 1);
+            hashes = Arrays.copyOf(hashes, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        hashes[size] = hash;
+        ids[size] = id;
+        size++;
+    }
+
+    private void reindexIfDue() {
+        if (size >= INDEX_FROM && size - indexed > Math.max(indexed >> 5, 1024)) {
+            reindex();
+        }
+    }
+
+    private void scan(long hash, int radius, int from, List<Match> matches) {
+        long[] scanned = hashes;
+        for (int i = from, end = size; i < end; i++) {
+            int distance = Long.bitCount(scanned[i] ^ hash);
+            if (distance <= radius) {
+                matches.add(new Match(ids[i], distance));
+            }
+        }
+    }
+
+    /**
+     * Rough number of scanned entries' worth of work a probe at {@code chunkRadius} costs: every
+     * table visits each of the masks' buckets, and each visit is a few cache misses on top of the
+     * bucket's own entries.
+     */
+    private long probeCost(int chunkRadius) {
+        long buckets = 0;
+        for (int weight = 0; weight <= chunkRadius; weight++) {
+            buckets += MASKS[weight].length;
+        }
+        return CHUNKS * buckets * (indexed / BUCKETS + BUCKET_VISIT_COST);
+    }
+
+    /**
+     * Counting sort of every entry by each chunk; O(n) per table.
+     */
+    private void reindex() {
+        int[][] newStarts = new int[CHUNKS][BUCKETS + 1];
+        int[][] newEntries = new int[CHUNKS][size];
+        long[][] newHashes = new long[CHUNKS][size];
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            int[] chunkStarts = newStarts[chunk];
+            for (int i = 0; i < size; i++) {
+                chunkStarts[chunkOf(hashes[i], chunk) + 1]++;
+            }
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                chunkStarts[bucket + 1] += chunkStarts[bucket];
+            }
+            int[] next = Arrays.copyOf(chunkStarts, BUCKETS);
+            for (int i = 0; i < size; i++) {
+                int slot = next[chunkOf(hashes[i], chunk)]++;
+                newEntries[chunk][slot] = i;
+                newHashes[chunk][slot] = hashes[i];
+            }
+        }
+        starts = newStarts;
+        entries = newEntries;
+        bucketHashes = newHashes;
+        indexed = size;
+    }
+
+    private static boolean nearInEarlierChunk(long difference, int chunk, int chunkRadius) {
+        for (int earlier = 0; earlier < chunk; earlier++) {
+            if (Integer.bitCount(chunkOf(difference, earlier)) <= chunkRadius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int chunkOf(long hash, int chunk) {
+        return (int) (hash >>> (chunk * CHUNK_BITS)) & (BUCKETS - 1);
+    }
+
+    private static int[][] masksByWeight() {
+        int[][] masks = new int[MAX_CHUNK_RADIUS + 1][];
+        int[] counts = new int[MAX_CHUNK_RADIUS + 1];
+        for (int mask = 0; mask < BUCKETS; mask++) {
+            if (Integer.bitCount(mask) <= MAX_CHUNK_RADIUS) {
+                counts[Integer.bitCount(mask)]++;
+            }
+        }
+        for (int weight = 0; weight <= MAX_CHUNK_RADIUS; weight++) {
+            masks[weight] = new int[counts[weight]];
+            counts[weight] = 0;
+        }
+        for (int mask = 0; mask < BUCKETS; mask++) {
+            int weight = Integer.bitCount(mask);
+            if (weight <= MAX_CHUNK_RADIUS) {
+                masks[weight][counts[weight]++] = mask;
+            }
+        }
+        return masks;
+    }
+}
@@ -0,0 +1,21 @@
+package org.aadi.ghibli_paint.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a hot-path log line is written. Per-request INFO lines cost a formatted message
+ * and an appender write each; at generation volumes metrics carry the totals, and a small random
+ * sample of structured lines is enough to see what individual requests looked like.
+ */
+public class LogSampler {
+
+    private final double rate;
+
+    public LogSampler(double rate) {
+        this.rate = Math.max(0, Math.min(1, rate));
+    }
+
+    public boolean sample() {
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+}
@@ -0,0 +1,49 @@
+package org.aadi.ghibli_paint.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * 64-bit difference hash (dHash): the image is reduced to 9x8 grayscale and each bit records
+ * whether a pixel is brighter than its right-hand neighbour. Resizing, re-encoding and small
+ * edits flip few bits, so near-duplicates are close in Hamming distance while unrelated images
+ * sit around 32 bits apart.
+ */
+public final class PerceptualHash {
+
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Works on any size, but callers should pass a small decode (a few dozen pixels across);
+     * only a 9x8 thumbnail of it is ever looked at.
+     */
+    public static long dHash(BufferedImage image) {
+        BufferedImage gray = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = gray.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, WIDTH, HEIGHT, null);
+        graphics.dispose();
+
+        Raster pixels = gray.getRaster();
+        long hash = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH - 1; x++) {
+                hash <<= 1;
+                if (pixels.getSample(x, y, 0) > pixels.getSample(x + 1, y, 0)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
@@ -0,0 +1,73 @@
+package org.aadi.ghibli_paint.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in its GCRA form: the whole state is one "theoretical arrival time"
+ * updated by CAS, so concurrent callers never block each other. A bucket admits {@code burst}
+ * requests at once and refills one token every {@code intervalNanos}. A request may cost several
+ * tokens; one costing more than the whole burst is admitted only from a full bucket and leaves it
+ * in debt, so the long-run rate still holds.
+ */
+public class TokenBucket {
+
+    public record Decision(boolean allowed, long remaining, long retryAfterNanos, long resetNanos) {
+    }
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final long burst;
+    private final AtomicLong theoreticalArrival;
+
+    public TokenBucket(long burst, long intervalNanos, long nowNanos) {
+        this.burst = burst;
+        this.intervalNanos = intervalNanos;
+        this.burstNanos = burst * intervalNanos;
+        this.theoreticalArrival = new AtomicLong(nowNanos);
+    }
+
+    public Decision tryAcquire(long nowNanos) {
+        return tryAcquire(nowNanos, 1);
+    }
+
+    public Decision tryAcquire(long nowNanos, long permits) {
+        long cost = permits * intervalNanos;
+        long admissionCost = Math.min(permits, burst) * intervalNanos;
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long start = Math.max(tat, nowNanos);
+            long debt = start + admissionCost - nowNanos;
+            if (debt > burstNanos) {
+                // Over budget: the request fits once the debt is back within the burst
+                return new Decision(false, 0, debt - burstNanos, Math.max(0, tat - nowNanos));
+            }
+            long next = start + cost;
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return new Decision(true, Math.max(0, burstNanos - (next - nowNanos)) / intervalNanos, 0, next - nowNanos);
+            }
+        }
+    }
+
+    /**
+     * Waits for a token instead of rejecting; for background work that should be paced, not shed.
+     */
+    public void acquire() throws InterruptedException {
+        Decision decision;
+        while (!(decision = tryAcquire(System.nanoTime())).allowed()) {
+            TimeUnit.NANOSECONDS.sleep(decision.retryAfterNanos());
+        }
+    }
+
+    public long burst() {
+        return burst;
+    }
+
+    /**
+     * True when the bucket has been full since {@code cutoffNanos}. Dropping it loses nothing:
+     * a fresh bucket behaves identically.
+     */
+    public boolean isIdleSince(long cutoffNanos) {
+        return theoreticalArrival.get() - cutoffNanos <= 0;
+    }
+}
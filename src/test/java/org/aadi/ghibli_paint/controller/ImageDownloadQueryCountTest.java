@@ -0,0 +1,136 @@
+package org.aadi.ghibli_paint.controller;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.aadi.ghibli_paint.entity.GeneratedImage;
+import org.aadi.ghibli_paint.entity.User;
+import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
+import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.security.AuthenticatedUser;
+import org.aadi.ghibli_paint.security.JwtUtil;
+import org.aadi.ghibli_paint.service.ImageStorageService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * A download looks its image up by (id, user_id), so the statements it issues must not grow with
+ * the size of the caller's gallery.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ImageDownloadQueryCountTest {
+
+    private static final byte[] CONTENT = "not really a png".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GeneratedImageRepository generatedImageRepository;
+
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private User user;
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        User newUser = new User();
+        newUser.setUsername("downloader-" + UUID.randomUUID());
+        newUser.setEmail(newUser.getUsername() + "@example.com");
+        newUser.setPassword("unused");
+        user = userRepository.save(newUser);
+        token = jwtUtil.generateToken(new AuthenticatedUser(user.getId(), user.getUsername(), null, true));
+    }
+
+    @Test
+    void statementCountDoesNotGrowWithGallerySize() throws Exception {
+        GeneratedImage image = seedImages(1).get(0);
+        // Warm-up: the first request of a token loads the principal into the short-TTL user cache
+        download(image);
+
+        long singleImageGallery = statementsFor(image);
+        seedImages(499);
+        long largeGallery = statementsFor(image);
+
+        assertThat(generatedImageRepository.count()).isGreaterThanOrEqualTo(500);
+        assertThat(singleImageGallery).isEqualTo(1);
+        assertThat(largeGallery).isEqualTo(singleImageGallery);
+    }
+
+    @Test
+    void otherUsersImagesAreNotFound() throws Exception {
+        GeneratedImage image = seedImages(1).get(0);
+        User other = new User();
+        other.setUsername("other-" + UUID.randomUUID());
+        other.setEmail(other.getUsername() + "@example.com");
+        other.setPassword("unused");
+        other = userRepository.save(other);
+        String otherToken = jwtUtil.generateToken(new AuthenticatedUser(other.getId(), other.getUsername(), null, true));
+
+        mockMvc.perform(get("/api/images/download/{id}", image.getId())
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + otherToken))
+                .andExpect(status().isNotFound());
+    }
+
+    private long statementsFor(GeneratedImage image) throws Exception {
+        statistics.clear();
+        download(image);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void download(GeneratedImage image) throws Exception {
+        mockMvc.perform(get("/api/images/download/{id}", image.getId())
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    private List<GeneratedImage> seedImages(int count) throws Exception {
+        List<GeneratedImage> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String key = UUID.randomUUID() + ".png";
+            imageStorageService.writeAtomically(key, CONTENT);
+            GeneratedImage image = new GeneratedImage();
+            image.setUser(user);
+            image.setPrompt("prompt " + i);
+            image.setImageUrl("http://localhost/api/images/serve/" + key);
+            image.setImageType("text-to-image");
+            image.setOriginalFilename(key);
+            image.setStorageKey(key);
+            image.setFileSize((long) CONTENT.length);
+            images.add(image);
+        }
+        return generatedImageRepository.saveAll(images);
+    }
+}
@@ -0,0 +1,128 @@
+package org.aadi.ghibli_paint.security;
+
+import com.jayway.jsonpath.JsonPath;
+import org.aadi.ghibli_paint.entity.User;
+import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.support.SqlCapture;
+import org.aadi.ghibli_paint.support.StabilityStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The caller is resolved from the token's claims, so once the principal is cached an
+ * authenticated request never reads the users table, on the request thread or in the job it starts.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "org.aadi.ghibli_paint.support.SqlCapture")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AuthenticatedRequestQueryTest {
+
+    private static final StabilityStubServer STUB = startStub();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    private String token;
+
+    @DynamicPropertySource
+    static void stabilityProperties(DynamicPropertyRegistry registry) {
+        registry.add("stability.api.url", STUB::baseUrl);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setUsername("caller-" + UUID.randomUUID());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user = userRepository.save(user);
+        token = jwtUtil.generateToken(new AuthenticatedUser(user.getId(), user.getUsername(), null, true));
+    }
+
+    @Test
+    void principalIsLoadedOncePerCacheWindow() throws Exception {
+        SqlCapture.clear();
+        getGallery();
+        assertThat(SqlCapture.touching("users")).hasSize(1);
+
+        SqlCapture.clear();
+        getGallery();
+        assertThat(SqlCapture.touching("users")).isEmpty();
+    }
+
+    @Test
+    void galleryAndGenerateDoNotQueryUsers() throws Exception {
+        getGallery();
+
+        SqlCapture.clear();
+        getGallery();
+        String jobId = JsonPath.read(mockMvc.perform(post("/api/images/generate/text-to-image")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"prompt\":\"a quiet village " + UUID.randomUUID() + "\"}"))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString(), "$.id");
+        assertThat(awaitJob(jobId)).isEqualTo("SUCCEEDED");
+
+        assertThat(SqlCapture.statements()).anyMatch(sql -> sql.toLowerCase().startsWith("insert into generated_images"));
+        assertThat(SqlCapture.touching("users")).isEmpty();
+    }
+
+    private void getGallery() throws Exception {
+        mockMvc.perform(get("/api/images/gallery").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    private String awaitJob(String jobId) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        String jobStatus;
+        do {
+            Thread.sleep(50);
+            String body = mockMvc.perform(get("/api/images/jobs/{id}", jobId)
+                            .header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            jobStatus = JsonPath.read(body, "$.status");
+        } while (("QUEUED".equals(jobStatus) || "RUNNING".equals(jobStatus)) && System.currentTimeMillis() < deadline);
+        return jobStatus;
+    }
+
+    private static StabilityStubServer startStub() {
+        try {
+            return new StabilityStubServer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.aadi.ghibli_paint.service;
+
+import org.aadi.ghibli_paint.dto.GalleryItem;
+import org.aadi.ghibli_paint.dto.GalleryPage;
+import org.aadi.ghibli_paint.entity.User;
+import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.security.AuthenticatedUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class GalleryServiceTest {
+
+    // Well clear of the pooled sequence the entity uses
+    private static final AtomicLong NEXT_ID = new AtomicLong(20_000_000);
+
+    @Autowired
+    private GalleryService galleryService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User owner;
+
+    @BeforeEach
+    void setUp() {
+        owner = saveUser("gallery");
+        AuthenticatedUser principal = new AuthenticatedUser(owner.getId(), owner.getUsername(), null, true);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void cursorRoundTrips() {
+        for (LocalDateTime createdAt : List.of(
+                LocalDateTime.of(2026, 10, 18, 6, 0),                  // toString drops zero seconds
+                LocalDateTime.of(2026, 10, 18, 6, 0, 5),
+                LocalDateTime.of(2026, 10, 18, 6, 0, 5, 123_456_000),
+                LocalDateTime.of(2026, 10, 18, 6, 0, 5, 1))) {
+            GalleryService.Cursor cursor = new GalleryService.Cursor(createdAt, Long.MAX_VALUE);
+            String encoded = cursor.encode();
+
+            assertThat(encoded).matches("[A-Za-z0-9_-]+");
+            assertThat(GalleryService.Cursor.decode(encoded)).isEqualTo(cursor);
+        }
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        for (String value : List.of("", "not base64!", "MTIz", "bm90LWEtZGF0ZXwx")) {
+            assertThatThrownBy(() -> GalleryService.Cursor.decode(value))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void pagesVisitEveryItemOnceWhenCreatedAtTies() {
+        // Three timestamps shared by many rows each, so most page boundaries fall inside a tie
+        LocalDateTime base = LocalDateTime.of(2026, 10, 18, 6, 0, 0, 123_456_000);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 31; i++) {
+            rows.add(row(owner, base.minusSeconds(i % 3)));
+        }
+        User other = saveUser("other");
+        for (int i = 0; i < 5; i++) {
+            rows.add(row(other, base));
+        }
+        jdbcTemplate.batchUpdate("insert into generated_images (id, user_id, prompt, image_url, created_at) "
+                + "values (?, ?, ?, ?, ?)", rows);
+
+        List<GalleryItem> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            GalleryPage page = galleryService.getPage(4, cursor, false);
+            seen.addAll(page.getItems());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(8);
+        assertThat(seen).extracting(GalleryItem::getId).doesNotHaveDuplicates().hasSize(31);
+        assertThat(seen).isSortedAccordingTo(Comparator.comparing(GalleryItem::getCreatedAt)
+                .thenComparing(GalleryItem::getId)
+                .reversed());
+    }
+
+    private static Object[] row(User user, LocalDateTime createdAt) {
+        long id = NEXT_ID.getAndIncrement();
+        return new Object[]{id, user.getId(), "prompt " + id, "http://localhost/api/images/serve/" + id + ".png",
+                Timestamp.valueOf(createdAt)};
+    }
+
+    private User saveUser(String prefix) {
+        User user = new User();
+        user.setUsername(prefix + "-" + UUID.randomUUID());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        return userRepository.save(user);
+    }
+}
@@ -0,0 +1,188 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aadi.ghibli_paint.entity.User;
+import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.support.SqlCapture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Gallery deletion must cost one batch per {@code app.deletion.batch-size} rows, not one statement
+ * per image, and must leave every blob it orphans in the blob_deletions log. Also measured on a
+ * 100k-image account, for statements and wall time.
+ */
+@SpringBootTest(properties = {
+        "app.deletion.batch-size=" + ImageDeletionServiceTest.BATCH_SIZE,
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=org.aadi.ghibli_paint.support.SqlCapture"})
+@ActiveProfiles("test")
+class ImageDeletionServiceTest {
+
+    static final int BATCH_SIZE = 200;
+    private static final int SEED_BATCH = 5_000;
+
+    // Well clear of the pooled sequence the entity uses
+    private static final AtomicLong NEXT_ID = new AtomicLong(10_000_000);
+
+    @Autowired
+    private ImageDeletionService imageDeletionService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private User owner;
+    private User other;
+
+    @BeforeEach
+    void setUp() {
+        owner = saveUser("owner");
+        other = saveUser("other");
+    }
+
+    @Test
+    void deletesAGalleryInBoundedBatches() {
+        int images = 1_234;
+        List<String> keys = seed(owner, images);
+        List<String> otherKeys = seed(other, 10);
+
+        long batchesBefore = batches();
+        SqlCapture.clear();
+        long deleted = imageDeletionService.deleteAllForUser(owner.getId());
+
+        long expectedBatches = (images + BATCH_SIZE - 1) / BATCH_SIZE;
+        assertThat(deleted).isEqualTo(images);
+        assertThat(batches() - batchesBefore).isLessThanOrEqualTo(expectedBatches);
+        assertThat(statements("delete from generated_images")).isLessThanOrEqualTo(expectedBatches);
+        assertThat(statements("insert into blob_deletions")).isLessThanOrEqualTo(expectedBatches);
+        // Select ids, enqueue keys, delete rows: three statements per batch plus the final empty probe
+        assertThat(SqlCapture.statements()).hasSizeLessThanOrEqualTo((int) (3 * expectedBatches + 1));
+
+        assertThat(countImages(owner)).isZero();
+        assertThat(countImages(other)).isEqualTo(10);
+        assertThat(enqueued(keys)).isEqualTo(images);
+        assertThat(enqueued(otherKeys)).isZero();
+    }
+
+    @Test
+    void deletesAHundredThousandImageAccountInBoundedStatementsAndTime() {
+        int images = 100_000;
+        List<String> keys = seed(owner, images);
+        long lastEnqueued = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from blob_deletions", Long.class);
+
+        long batchesBefore = batches();
+        SqlCapture.clear();
+        long start = System.nanoTime();
+        long deleted = imageDeletionService.deleteAllForUser(owner.getId());
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        long expectedBatches = (images + BATCH_SIZE - 1) / BATCH_SIZE;
+        assertThat(deleted).isEqualTo(images);
+        assertThat(batches() - batchesBefore).isLessThanOrEqualTo(expectedBatches);
+        assertThat(SqlCapture.statements()).hasSizeLessThanOrEqualTo((int) (3 * expectedBatches + 1));
+        // About 15s for the 500 batches on in-memory H2, leaving room for a slower machine
+        assertThat(elapsed).isLessThan(Duration.ofSeconds(45));
+
+        assertThat(countImages(owner)).isZero();
+        // One scan rather than enqueued(keys), whose IN lists would each scan the unindexed log
+        assertThat(jdbcTemplate.queryForList("select storage_key from blob_deletions where id > ?", String.class,
+                lastEnqueued)).containsExactlyInAnyOrderElementsOf(keys);
+    }
+
+    @Test
+    void deletesOnlyTheCallersImages() {
+        List<Long> ownIds = new ArrayList<>();
+        List<String> keys = seed(owner, 450, ownIds);
+        List<Long> otherIds = new ArrayList<>();
+        List<String> otherKeys = seed(other, 50, otherIds);
+
+        List<Long> requested = new ArrayList<>(ownIds);
+        requested.addAll(otherIds);
+        int deleted = imageDeletionService.deleteOwned(owner.getId(), requested);
+
+        assertThat(deleted).isEqualTo(450);
+        assertThat(countImages(owner)).isZero();
+        assertThat(countImages(other)).isEqualTo(50);
+        assertThat(enqueued(keys)).isEqualTo(450);
+        assertThat(enqueued(otherKeys)).isZero();
+    }
+
+    private List<String> seed(User user, int count) {
+        return seed(user, count, new ArrayList<>());
+    }
+
+    /**
+     * Inserts rows with plain JDBC batches of {@code SEED_BATCH}; every tenth one predates
+     * storage_key and only has the serve URL to go by.
+     */
+    private List<String> seed(User user, int count, List<Long> ids) {
+        List<String> keys = new ArrayList<>(count);
+        List<Object[]> rows = new ArrayList<>(Math.min(count, SEED_BATCH));
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < count; i++) {
+            long id = NEXT_ID.getAndIncrement();
+            String key = UUID.randomUUID() + ".png";
+            ids.add(id);
+            keys.add(key);
+            rows.add(new Object[]{id, user.getId(), "prompt " + i, "http://localhost/api/images/serve/" + key,
+                    i % 10 == 0 ? null : key, now});
+            if (rows.size() == SEED_BATCH || i == count - 1) {
+                jdbcTemplate.batchUpdate("insert into generated_images (id, user_id, prompt, image_url, storage_key, "
+                        + "created_at) values (?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+        return keys;
+    }
+
+    private User saveUser(String prefix) {
+        User user = new User();
+        user.setUsername(prefix + "-" + UUID.randomUUID());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        return userRepository.save(user);
+    }
+
+    private long batches() {
+        return meterRegistry.get("image.deletion.batch").timer().count();
+    }
+
+    private static long statements(String prefix) {
+        return SqlCapture.statements().stream().filter(sql -> sql.toLowerCase().startsWith(prefix)).count();
+    }
+
+    private long countImages(User user) {
+        return jdbcTemplate.queryForObject("select count(*) from generated_images where user_id = ?", Long.class, user.getId());
+    }
+
+    private long enqueued(List<String> keys) {
+        long found = 0;
+        for (int from = 0; from < keys.size(); from += 500) {
+            List<String> chunk = keys.subList(from, Math.min(from + 500, keys.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            found += jdbcTemplate.queryForObject("select count(distinct storage_key) from blob_deletions where storage_key in ("
+                    + placeholders + ")", Long.class, chunk.toArray());
+        }
+        return found;
+    }
+}
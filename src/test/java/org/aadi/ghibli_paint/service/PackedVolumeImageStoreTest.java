@@ -0,0 +1,158 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Deletes must survive compaction even when the index is rebuilt from the volumes alone, which is
+ * what startup does when the checkpoint is missing or unrecognised.
+ */
+class PackedVolumeImageStoreTest {
+
+    private static final int KB = 1024;
+
+    @TempDir
+    Path directory;
+
+    private PackedVolumeImageStore store;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    void deletedImagesStayDeletedAfterCompactionAndRebuild() throws IOException {
+        store = open();
+        // Volume 1 keeps enough live data to stay below the compaction threshold
+        put("deleted.png", 300 * KB, 1);
+        put("kept.png", 500 * KB, 2);
+        // Volume 2 ends up holding nothing but garbage and the tombstones
+        put("other.png", 600 * KB, 3);
+        store.delete("deleted.png");
+        store.delete("other.png");
+        put("active.png", 600 * KB, 4);
+
+        store.compact();
+        assertThat(volumeFiles()).containsExactly("volume-000001.dat", "volume-000003.dat");
+
+        restartWithoutCheckpoint();
+        assertThat(store.exists("deleted.png")).isFalse();
+        assertThat(store.exists("other.png")).isFalse();
+        assertContent("kept.png", 500 * KB, 2);
+        assertContent("active.png", 600 * KB, 4);
+
+        // Once the old copy's volume is compacted too, the tombstone has nothing left to guard
+        store.delete("kept.png");
+        store.compact();
+        restartWithoutCheckpoint();
+        assertThat(store.exists("deleted.png")).isFalse();
+        assertThat(store.exists("kept.png")).isFalse();
+        assertContent("active.png", 600 * KB, 4);
+    }
+
+    @Test
+    void imagesWrittenAgainAfterADeleteSurviveCompactionAndRebuild() throws IOException {
+        store = open();
+        put("reused.png", 300 * KB, 1);
+        put("kept.png", 500 * KB, 2);
+        put("other.png", 600 * KB, 3);
+        store.delete("reused.png");
+        store.delete("other.png");
+        put("reused.png", 600 * KB, 5);
+
+        store.compact();
+        restartWithoutCheckpoint();
+        assertContent("reused.png", 600 * KB, 5);
+
+        // The new copy's delete must also cover the copy written before the first delete, even
+        // after the new copy's volume is compacted away
+        store.delete("reused.png");
+        put("filler.png", 600 * KB, 6);
+        store.compact();
+        assertThat(volumeFiles()).containsExactly("volume-000001.dat", "volume-000004.dat");
+        restartWithoutCheckpoint();
+        assertThat(store.exists("reused.png")).isFalse();
+        assertContent("kept.png", 500 * KB, 2);
+    }
+
+    @Test
+    void tombstonesSurviveACheckpointedRestart() throws IOException {
+        store = open();
+        put("deleted.png", 300 * KB, 1);
+        put("kept.png", 500 * KB, 2);
+        put("other.png", 600 * KB, 3);
+        store.delete("deleted.png");
+        store.delete("other.png");
+        put("active.png", 600 * KB, 4);
+        store.compact();
+
+        // Through the checkpoint, then compacting the carried tombstone's volume before rebuilding
+        store.stop();
+        store = open();
+        put("filler.png", 600 * KB, 6);
+        store.delete("active.png");
+        store.compact();
+        restartWithoutCheckpoint();
+        assertThat(store.exists("deleted.png")).isFalse();
+        assertThat(store.exists("active.png")).isFalse();
+        assertContent("kept.png", 500 * KB, 2);
+    }
+
+    private PackedVolumeImageStore open() throws IOException {
+        PackedVolumeImageStore opened = new PackedVolumeImageStore(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(opened, "volumePath", directory.toString());
+        ReflectionTestUtils.setField(opened, "volumeSizeMb", 1L);
+        ReflectionTestUtils.setField(opened, "compactionThreshold", 0.5);
+        ReflectionTestUtils.setField(opened, "compactionBytesPerSecond", Long.MAX_VALUE);
+        opened.start();
+        return opened;
+    }
+
+    private void restartWithoutCheckpoint() throws IOException {
+        store.stop();
+        Files.delete(directory.resolve("index.ckpt"));
+        store = open();
+    }
+
+    private void put(String key, int length, int fill) throws IOException {
+        store.put(key, new ByteArrayInputStream(content(length, fill)), length);
+    }
+
+    private void assertContent(String key, int length, int fill) throws IOException {
+        try (InputStream in = store.get(key)) {
+            assertThat(in.readAllBytes()).isEqualTo(content(length, fill));
+        }
+    }
+
+    private static byte[] content(int length, int fill) {
+        byte[] content = new byte[length];
+        Arrays.fill(content, (byte) fill);
+        return content;
+    }
+
+    private Stream<String> volumeNames() throws IOException {
+        return Files.list(directory).map(path -> path.getFileName().toString()).filter(name -> name.endsWith(".dat"));
+    }
+
+    private String[] volumeFiles() throws IOException {
+        try (Stream<String> names = volumeNames()) {
+            return names.sorted().toArray(String[]::new);
+        }
+    }
+}
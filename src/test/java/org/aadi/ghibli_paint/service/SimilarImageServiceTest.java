@@ -0,0 +1,113 @@
+package org.aadi.ghibli_paint.service;
+
+import org.aadi.ghibli_paint.dto.SimilarImage;
+import org.aadi.ghibli_paint.entity.User;
+import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.security.AuthenticatedUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Deleted images must stop showing up as similar ones, and must not eat into the result limit
+ * while they are still in a loaded index.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class SimilarImageServiceTest {
+
+    // Well clear of the pooled sequence the entity uses
+    private static final AtomicLong NEXT_ID = new AtomicLong(30_000_000);
+
+    @Autowired
+    private SimilarImageService similarImageService;
+
+    @Autowired
+    private ImageDeletionService imageDeletionService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User owner;
+    private long query;
+    // Nearest first: the i-th one differs from the query in i + 1 bits
+    private List<Long> neighbours;
+
+    @BeforeEach
+    void setUp() {
+        owner = new User();
+        owner.setUsername("similar-" + UUID.randomUUID());
+        owner.setEmail(owner.getUsername() + "@example.com");
+        owner.setPassword("unused");
+        owner = userRepository.save(owner);
+        AuthenticatedUser principal = new AuthenticatedUser(owner.getId(), owner.getUsername(), null, true);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+
+        query = seed(0L);
+        neighbours = new ArrayList<>();
+        for (int bits = 1; bits <= 6; bits++) {
+            neighbours.add(seed((1L << bits) - 1));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void deletedImagesLeaveTheLoadedIndex() {
+        assertThat(similarIds(2)).containsExactly(neighbours.get(0), neighbours.get(1));
+
+        imageDeletionService.deleteOwned(owner.getId(), neighbours.subList(0, 2));
+
+        assertThat(similarIds(2)).containsExactly(neighbours.get(2), neighbours.get(3));
+        assertThat(similarIds(10)).containsExactlyElementsOf(neighbours.subList(2, 6));
+    }
+
+    @Test
+    void rowsGoneFromTheGalleryDoNotShortenTheResults() {
+        assertThat(similarIds(2)).containsExactly(neighbours.get(0), neighbours.get(1));
+
+        // Behind the index's back, like a delete that commits while a query runs
+        for (Long id : neighbours.subList(0, 5)) {
+            jdbcTemplate.update("delete from generated_images where id = ?", id);
+        }
+
+        assertThat(similarIds(1)).containsExactly(neighbours.get(5));
+    }
+
+    private List<Long> similarIds(int limit) {
+        return similarImageService.findSimilar(query, 10, limit).stream()
+                .map(similar -> similar.getImage().getId())
+                .toList();
+    }
+
+    private long seed(long hash) {
+        long id = NEXT_ID.getAndIncrement();
+        String key = UUID.randomUUID() + ".png";
+        jdbcTemplate.update("insert into generated_images (id, user_id, prompt, image_url, storage_key, created_at, "
+                        + "perceptual_hash) values (?, ?, ?, ?, ?, ?, ?)", id, owner.getId(), "prompt " + id,
+                "http://localhost/api/images/serve/" + key, key, Timestamp.valueOf(LocalDateTime.now()), hash);
+        return id;
+    }
+}
@@ -0,0 +1,219 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aadi.ghibli_paint.entity.User;
+import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.security.AuthenticatedUser;
+import org.aadi.ghibli_paint.support.StabilityStubServer;
+import org.aadi.ghibli_paint.util.CircuitBreaker;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the reactive generation path against a stub upstream in brownout: every call a 503, or
+ * every call slower than the attempt timeout. The breaker must open and then fail fast without
+ * touching upstream, the brownout must not pile up threads or stretch a call's p99 past its
+ * attempts' timeouts, and once upstream is healthy again the breaker must close through HALF_OPEN.
+ */
+@SpringBootTest(properties = {
+        "stability.resilience.core.timeout-seconds=2",
+        "stability.resilience.max-retries=1",
+        "stability.resilience.backoff-ms=10",
+        "stability.resilience.max-backoff-ms=20",
+        "stability.resilience.breaker.window-size=10",
+        "stability.resilience.breaker.minimum-calls=5",
+        "stability.resilience.breaker.open-seconds=3",
+        "stability.resilience.breaker.half-open-probes=2"})
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class StabilityBrownoutTest {
+
+    private static final String ENDPOINT = "/generate/core";
+    private static final int CONCURRENT_CALLS = 50;
+
+    private record Call(String outcome, Duration latency) {
+    }
+    private static final StabilityStubServer STUB = startStub();
+
+    @Autowired
+    private StabilityAIService stabilityAIService;
+
+    @Autowired
+    private StabilityResilienceService stabilityResilienceService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @DynamicPropertySource
+    static void stabilityProperties(DynamicPropertyRegistry registry) {
+        registry.add("stability.api.url", STUB::baseUrl);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setUsername("brownout-" + UUID.randomUUID());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user = userRepository.save(user);
+        AuthenticatedUser principal = new AuthenticatedUser(user.getId(), user.getUsername(), null, true);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+
+        // Healthy warm-up so connection pools, event loops and schedulers exist before threads are
+        // counted; in small rounds, as a cold JVM would otherwise blow the attempt timeout
+        STUB.respondWith(200, 0);
+        for (int round = 0; round < CONCURRENT_CALLS / 10; round++) {
+            assertThat(outcomes(generateConcurrently(10))).containsOnly("ok");
+        }
+        threads.resetPeakThreadCount();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        STUB.respondWith(200, 0);
+    }
+
+    @Test
+    void errorBrownoutOpensTheBreakerAndFailsFast() throws Exception {
+        int baselineThreads = threads.getThreadCount();
+        STUB.respondWith(503, 0);
+
+        List<Call> calls = generateConcurrently(CONCURRENT_CALLS);
+        assertThat(outcomes(calls)).doesNotContain("ok");
+        // Two quick 503s and a short backoff at most, well inside one attempt's timeout
+        assertThat(p99(calls)).isLessThan(Duration.ofMillis(1_500));
+        assertThat(stabilityResilienceService.state(ENDPOINT)).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertFailsFastWhileOpen();
+        assertThat(threads.getPeakThreadCount() - baselineThreads).isLessThan(CONCURRENT_CALLS / 5);
+        assertRecoversThroughHalfOpen();
+    }
+
+    @Test
+    void latencyBrownoutTimesOutWithoutHoldingThreads() throws Exception {
+        int baselineThreads = threads.getThreadCount();
+        STUB.respondWith(200, 5_000);
+
+        long start = System.nanoTime();
+        List<Call> calls = generateConcurrently(CONCURRENT_CALLS);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(outcomes(calls)).doesNotContain("ok");
+        // Two two-second attempts and a short backoff each, never the stub's five seconds
+        assertThat(p99(calls)).isLessThan(Duration.ofMillis(4_800));
+        // All in parallel, not one after another
+        assertThat(elapsed).isLessThan(Duration.ofSeconds(8));
+        assertThat(stabilityResilienceService.state(ENDPOINT)).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(threads.getPeakThreadCount() - baselineThreads).isLessThan(CONCURRENT_CALLS / 5);
+
+        assertFailsFastWhileOpen();
+        assertRecoversThroughHalfOpen();
+    }
+
+    private void assertFailsFastWhileOpen() {
+        // Counted on our side: the stub may still be picking up connections the brownout left behind
+        long attempts = attempts();
+        long start = System.nanoTime();
+        List<Call> calls = generateConcurrently(CONCURRENT_CALLS);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(outcomes(calls)).containsOnly(UpstreamUnavailableException.class.getSimpleName());
+        assertThat(p99(calls)).isLessThan(Duration.ofMillis(400));
+        assertThat(attempts()).isEqualTo(attempts);
+        assertThat(meterRegistry.get("stability.calls").tag("endpoint", ENDPOINT).tag("outcome", "rejected")
+                .counter().count()).isGreaterThanOrEqualTo(CONCURRENT_CALLS);
+        // The p99 above is the bound on each call; the whole round only has to show they did not queue
+        assertThat(elapsed).isLessThan(Duration.ofSeconds(1));
+    }
+
+    private long attempts() {
+        return meterRegistry.find("stability.upstream.latency").tag("endpoint", ENDPOINT).timers().stream()
+                .mapToLong(Timer::count)
+                .sum();
+    }
+
+    private void assertRecoversThroughHalfOpen() throws InterruptedException {
+        STUB.respondWith(200, 0);
+        Thread.sleep(3_100);
+
+        // First probe admitted: the breaker is half-open until both probes have succeeded
+        assertThat(generate()).isEqualTo("ok");
+        assertThat(stabilityResilienceService.state(ENDPOINT)).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(generate()).isEqualTo("ok");
+        assertThat(stabilityResilienceService.state(ENDPOINT)).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private String generate() {
+        return generateConcurrently(1).get(0).outcome();
+    }
+
+    /**
+     * Starts every call before waiting on any, and reports each one's latency along with "ok" or
+     * the simple name of the error.
+     */
+    private List<Call> generateConcurrently(int calls) {
+        List<Mono<Call>> generations = IntStream.range(0, calls)
+                .mapToObj(i -> Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return stabilityAIService.generateImageFromTextReactive("brownout " + UUID.randomUUID())
+                            .map(image -> "ok")
+                            .onErrorResume(error -> Mono.just(error.getClass().getSimpleName()))
+                            .map(outcome -> new Call(outcome, Duration.ofNanos(System.nanoTime() - start)));
+                }))
+                .toList();
+        return Flux.merge(generations).collectList().block(Duration.ofSeconds(30));
+    }
+
+    private static List<String> outcomes(List<Call> calls) {
+        return calls.stream().map(Call::outcome).toList();
+    }
+
+    private static Duration p99(List<Call> calls) {
+        List<Duration> latencies = calls.stream().map(Call::latency).sorted().toList();
+        return latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1);
+    }
+
+    private static StabilityStubServer startStub() {
+        try {
+            return new StabilityStubServer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
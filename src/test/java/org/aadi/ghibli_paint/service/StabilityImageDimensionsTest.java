@@ -0,0 +1,80 @@
+package org.aadi.ghibli_paint.service;
+
+import org.aadi.ghibli_paint.entity.GeneratedImage;
+import org.aadi.ghibli_paint.entity.User;
+import org.aadi.ghibli_paint.repository.GeneratedImageRepository;
+import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.support.StabilityStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pixel sizes come from the PNG header when the image is stored, and travel with the cache entry
+ * so a cache hit records them too. The similarity backfill is off in tests, so nothing else fills
+ * them in.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class StabilityImageDimensionsTest {
+
+    private static final StabilityStubServer STUB = startStub();
+
+    @Autowired
+    private StabilityAIService stabilityAIService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GeneratedImageRepository generatedImageRepository;
+
+    @DynamicPropertySource
+    static void stabilityProperties(DynamicPropertyRegistry registry) {
+        registry.add("stability.api.url", STUB::baseUrl);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    void generatedAndCachedImagesRecordTheirDimensions() throws IOException {
+        User user = new User();
+        user.setUsername("dimensions-" + UUID.randomUUID());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user = userRepository.save(user);
+        String prompt = "dimensions " + UUID.randomUUID();
+
+        GeneratedImage generated = stabilityAIService.generateImageFromText(user, prompt);
+        GeneratedImage cached = stabilityAIService.generateImageFromText(user, prompt);
+
+        assertThat(cached.getId()).isNotEqualTo(generated.getId());
+        assertThat(cached.getStorageKey()).isEqualTo(generated.getStorageKey());
+        for (GeneratedImage image : new GeneratedImage[] {generated, cached}) {
+            GeneratedImage saved = generatedImageRepository.findById(image.getId()).orElseThrow();
+            assertThat(saved.getWidth()).isEqualTo(64);
+            assertThat(saved.getHeight()).isEqualTo(64);
+        }
+    }
+
+    private static StabilityStubServer startStub() {
+        try {
+            return new StabilityStubServer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
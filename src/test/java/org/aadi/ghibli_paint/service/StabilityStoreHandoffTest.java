@@ -0,0 +1,165 @@
+package org.aadi.ghibli_paint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aadi.ghibli_paint.entity.GeneratedImage;
+import org.aadi.ghibli_paint.entity.User;
+import org.aadi.ghibli_paint.repository.UserRepository;
+import org.aadi.ghibli_paint.security.AuthenticatedUser;
+import org.aadi.ghibli_paint.support.StabilityStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+
+/**
+ * Handing a generated image to the store happens after the guarded upstream call: a store slower
+ * than the attempt timeout, or one that fails, must neither repeat the paid call nor move the
+ * breaker, and must not leave staged temp files behind.
+ */
+@SpringBootTest(properties = {
+        "stability.resilience.core.timeout-seconds=2",
+        "stability.resilience.max-retries=1",
+        "stability.resilience.backoff-ms=10",
+        "stability.resilience.max-backoff-ms=20"})
+@ActiveProfiles("test")
+class StabilityStoreHandoffTest {
+
+    private static final String ENDPOINT = "/generate/core";
+    private static final StabilityStubServer STUB = startStub();
+
+    @Autowired
+    private StabilityAIService stabilityAIService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @SpyBean
+    private ImageStore imageStore;
+
+    @Value("${app.storage.path}")
+    private String storagePath;
+
+    @DynamicPropertySource
+    static void stabilityProperties(DynamicPropertyRegistry registry) {
+        registry.add("stability.api.url", STUB::baseUrl);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setUsername("handoff-" + UUID.randomUUID());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user = userRepository.save(user);
+        AuthenticatedUser principal = new AuthenticatedUser(user.getId(), user.getUsername(), null, true);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void slowStoreDoesNotTimeOutOrRetryTheUpstreamCall() throws Exception {
+        doAnswer(invocation -> {
+            Thread.sleep(3_000);
+            return invocation.callRealMethod();
+        }).when(imageStore).putFile(anyString(), any(Path.class));
+        long attempts = attempts();
+        double successes = calls("success");
+        long staged = stagedFiles();
+
+        GeneratedImage image = generate();
+
+        assertThat(image).isNotNull();
+        assertThat(imageStore.exists(image.getStorageKey())).isTrue();
+        assertThat(attempts()).isEqualTo(attempts + 1);
+        assertThat(calls("success")).isEqualTo(successes + 1);
+        assertThat(calls("failure")).isZero();
+        assertThat(stagedFiles()).isEqualTo(staged);
+    }
+
+    @Test
+    void storeFailureIsNotCountedAgainstUpstream() throws Exception {
+        doThrow(new IOException("disk full")).when(imageStore).putFile(anyString(), any(Path.class));
+        long attempts = attempts();
+        double successes = calls("success");
+        long staged = stagedFiles();
+
+        assertThatThrownBy(this::generate).hasRootCauseMessage("disk full");
+
+        assertThat(attempts()).isEqualTo(attempts + 1);
+        assertThat(calls("success")).isEqualTo(successes + 1);
+        assertThat(calls("failure")).isZero();
+        assertThat(calls("client_error")).isZero();
+        assertThat(stagedFiles()).isEqualTo(staged);
+    }
+
+    private GeneratedImage generate() {
+        return stabilityAIService.generateImageFromTextReactive("handoff " + UUID.randomUUID())
+                .block(Duration.ofSeconds(30));
+    }
+
+    private long attempts() {
+        return meterRegistry.find("stability.upstream.latency").tag("endpoint", ENDPOINT).timers().stream()
+                .mapToLong(Timer::count)
+                .sum();
+    }
+
+    private double calls(String outcome) {
+        Counter counter = meterRegistry.find("stability.calls").tag("endpoint", ENDPOINT).tag("outcome", outcome)
+                .counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private long stagedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Files.createDirectories(Paths.get(storagePath)))) {
+            return files.filter(file -> file.getFileName().toString().startsWith(".upload-")).count();
+        }
+    }
+
+    private static StabilityStubServer startStub() {
+        try {
+            return new StabilityStubServer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.aadi.ghibli_paint.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal stand-in for the Stability AI generate endpoints: answers a small PNG, or a fixed status
+ * after a fixed delay. Behaviour can be switched while a test runs.
+ */
+public class StabilityStubServer implements AutoCloseable {
+
+    private static final byte[] PNG = samplePng();
+    private static final byte[] UNAVAILABLE = "{\"name\":\"service_unavailable\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private volatile int status = 200;
+    private volatile long delayMs;
+
+    public StabilityStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        server.createContext("/v2beta/stable-image/generate/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v2beta/stable-image";
+    }
+
+    public void respondWith(int status, long delayMs) {
+        this.status = status;
+        this.delayMs = delayMs;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            boolean ok = status == 200;
+            byte[] body = ok ? PNG : UNAVAILABLE;
+            exchange.getResponseHeaders().set("Content-Type", ok ? "image/png" : "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] samplePng() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB), "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}